@@ -0,0 +1,83 @@
+package com.cacheviewer;
+
+import net.runelite.api.Client;
+import net.runelite.api.IndexDataBase;
+
+/**
+ * Sizes of the cache archives the viewer walks by id, used to bound id ranges from commands.
+ */
+public final class CacheViewerArchives
+{
+    public static final int MODELS = 7;
+    public static final int SPRITES = 8;
+
+    // Upper bound on the search, well past either archive
+    private static final int MAX_GROUP_ID = (1 << 18) - 1;
+
+    // Longest run of empty groups stepped over when looking for the end
+    private static final int MAX_GAP = 64;
+
+    private CacheViewerArchives()
+    {
+    }
+
+    /**
+     * Must be called on the client thread.
+     * @return the highest group id in the archive, or -1 if it isn't loaded
+     */
+    public static int getLastId(Client client, int archive)
+    {
+        IndexDataBase index = client.getIndex(archive);
+        if (index == null)
+        {
+            return -1;
+        }
+
+        // Groups are numbered from 0 with only short gaps, so binary search for the last one
+        int lo = -1;
+        int hi = MAX_GROUP_ID + 1;
+
+        while (hi - lo > 1)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (nextGroup(index, mid) >= 0)
+            {
+                lo = mid;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * @return the first group at or within MAX_GAP after id, or -1
+     */
+    private static int nextGroup(IndexDataBase index, int id)
+    {
+        for (int i = id; i <= Math.min(MAX_GROUP_ID, id + MAX_GAP); i++)
+        {
+            if (exists(index, i))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean exists(IndexDataBase index, int group)
+    {
+        try
+        {
+            return index.getFileIds(group) != null;
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            // Past the end of the archive
+            return false;
+        }
+    }
+}
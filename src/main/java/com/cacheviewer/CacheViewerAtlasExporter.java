@@ -0,0 +1,466 @@
+package com.cacheviewer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.SpritePixels;
+import net.runelite.client.callback.ClientThread;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Packs a range of sprites into atlas pages with a json index.
+ * Pixels are copied on the client thread in time boxed slices, packing and png
+ * encoding run on the worker pool with one task per page.
+ */
+@Slf4j
+public class CacheViewerAtlasExporter
+{
+    private static final int PAGE_SIZE = 2048;
+    private static final int PADDING = 1;
+
+    // Leave some slack so most buckets pack into a single page first time
+    private static final long BUCKET_AREA = (long) PAGE_SIZE * PAGE_SIZE * 85 / 100;
+
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static final class Sprite
+    {
+        final int id;
+        final int frame;
+        final int width;
+        final int height;
+        final int[] pixels;
+
+        int page;
+        int x;
+        int y;
+
+        Sprite(int id, int frame, int width, int height, int[] pixels)
+        {
+            this.id = id;
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final class Page
+    {
+        final List<Sprite> sprites = new ArrayList<>();
+        int width;
+        int height;
+    }
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final ExecutorService workers;
+    private final int firstId;
+    private final File outputDir;
+    private int lastId;
+    private File dir;
+    private final Consumer<String> onComplete;
+
+    private final List<Sprite> sprites = new ArrayList<>();
+
+    private volatile boolean running = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean exporting = false;
+    private CaptureTask captureTask;
+    private long startNanos;
+
+    public CacheViewerAtlasExporter(
+            Client client,
+            ClientThread clientThread,
+            ExecutorService workers,
+            int firstId,
+            int lastId,
+            File outputDir,
+            Consumer<String> onComplete)
+    {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.workers = workers;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.outputDir = outputDir;
+        this.onComplete = onComplete;
+    }
+
+    public void start()
+    {
+        int archiveLastId = CacheViewerArchives.getLastId(client, CacheViewerArchives.SPRITES);
+        if (archiveLastId < 0)
+        {
+            onComplete.accept("The sprite archive isn't loaded yet.");
+            return;
+        }
+
+        if (firstId > archiveLastId)
+        {
+            onComplete.accept("The last sprite is " + archiveLastId + ".");
+            return;
+        }
+
+        // The range comes straight from the command, so keep it to sprites that can exist
+        lastId = Math.min(lastId, archiveLastId);
+        dir = new File(outputDir, "atlas-" + firstId + "-" + lastId);
+
+        int[] ids = new int[lastId - firstId + 1];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = firstId + i;
+        }
+
+        running = true;
+        startNanos = System.nanoTime();
+        captureTask = new CaptureTask(ids);
+        clientThread.invokeLater(captureTask);
+    }
+
+    public void cancel()
+    {
+        if (captureTask != null)
+        {
+            captureTask.cancel();
+        }
+
+        cancelled = true;
+
+        // Once exporting, the workers clear this when they notice
+        if (!exporting)
+        {
+            running = false;
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    private class CaptureTask extends CacheViewerTickTask
+    {
+        CaptureTask(int[] ids)
+        {
+            super(ids, TICK_BUDGET_NANOS);
+        }
+
+        @Override
+        protected boolean process(int id)
+        {
+            SpritePixels[] frames = client.getSprites(client.getIndexSprites(), id, 0);
+            if (frames == null)
+            {
+                return true;
+            }
+
+            for (int frame = 0; frame < frames.length; frame++)
+            {
+                SpritePixels sprite = frames[frame];
+                if (sprite == null || sprite.getWidth() <= 0 || sprite.getHeight() <= 0)
+                {
+                    continue;
+                }
+
+                sprites.add(new Sprite(id, frame, sprite.getWidth(), sprite.getHeight(), sprite.getPixels().clone()));
+            }
+
+            return true;
+        }
+
+        @Override
+        protected boolean finish()
+        {
+            if (sprites.isEmpty())
+            {
+                running = false;
+                onComplete.accept("No sprites found between " + firstId + " and " + lastId + ".");
+                return true;
+            }
+
+            exporting = true;
+            export();
+            return true;
+        }
+    }
+
+
+
+    private void export()
+    {
+        // Tallest first packs noticeably tighter than area order for ui sprites
+        sprites.sort(Comparator.comparingInt((Sprite s) -> s.height).thenComparingInt(s -> s.width).reversed());
+
+        pack(sprites)
+                .thenCompose(this::writePages)
+                .whenComplete((pages, error) ->
+                {
+                    running = false;
+
+                    if (cancelled)
+                    {
+                        onComplete.accept("Atlas export cancelled.");
+                        return;
+                    }
+
+                    if (error != null)
+                    {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        log.warn("Failed to export sprite atlas", cause);
+                        onComplete.accept("Atlas export failed: " + cause.getMessage());
+                        return;
+                    }
+
+                    long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    onComplete.accept("Packed " + sprites.size() + " sprites into " + pages.size()
+                            + " atlas pages in " + dir.getName() + " (" + ms + "ms).");
+                });
+    }
+
+    /**
+     * Splits the sprites into page sized buckets and packs each bucket on its own worker.
+     * Anything that didn't fit goes round again into new pages.
+     */
+    private CompletableFuture<List<Page>> pack(List<Sprite> remaining)
+    {
+        List<List<Sprite>> buckets = new ArrayList<>();
+        List<Sprite> bucket = new ArrayList<>();
+        long area = 0;
+
+        for (Sprite s : remaining)
+        {
+            long spriteArea = (long) (s.width + PADDING) * (s.height + PADDING);
+            if (!bucket.isEmpty() && area + spriteArea > BUCKET_AREA)
+            {
+                buckets.add(bucket);
+                bucket = new ArrayList<>();
+                area = 0;
+            }
+
+            bucket.add(s);
+            area += spriteArea;
+        }
+        buckets.add(bucket);
+
+        List<CompletableFuture<List<Sprite>>> leftovers = new ArrayList<>();
+        List<Page> pages = new ArrayList<>();
+
+        for (List<Sprite> b : buckets)
+        {
+            Page page = new Page();
+            pages.add(page);
+            leftovers.add(CompletableFuture.supplyAsync(() -> packPage(page, b), workers));
+        }
+
+        return CompletableFuture.allOf(leftovers.toArray(new CompletableFuture[0]))
+                .thenCompose(v ->
+                {
+                    if (cancelled)
+                    {
+                        throw new IllegalStateException("cancelled");
+                    }
+
+                    List<Sprite> next = new ArrayList<>();
+                    for (CompletableFuture<List<Sprite>> f : leftovers)
+                    {
+                        next.addAll(f.join());
+                    }
+
+                    pages.removeIf(p -> p.sprites.isEmpty());
+
+                    if (next.isEmpty())
+                    {
+                        return CompletableFuture.completedFuture(pages);
+                    }
+
+                    return pack(next).thenApply(more ->
+                    {
+                        pages.addAll(more);
+                        return pages;
+                    });
+                });
+    }
+
+    /**
+     * @return the sprites that didn't fit
+     */
+    private static List<Sprite> packPage(Page page, List<Sprite> bucket)
+    {
+        // Grow the page for oversized sprites, so the first sprite of a bucket always fits
+        int width = PAGE_SIZE;
+        int height = PAGE_SIZE;
+        for (Sprite s : bucket)
+        {
+            width = Math.max(width, s.width + PADDING);
+            height = Math.max(height, s.height + PADDING);
+        }
+
+        CacheViewerMaxRectsPacker packer = new CacheViewerMaxRectsPacker(width, height);
+        List<Sprite> leftover = new ArrayList<>();
+
+        for (Sprite s : bucket)
+        {
+            int[] pos = packer.insert(s.width + PADDING, s.height + PADDING);
+            if (pos == null)
+            {
+                leftover.add(s);
+                continue;
+            }
+
+            s.x = pos[0];
+            s.y = pos[1];
+            page.sprites.add(s);
+        }
+
+        page.width = packer.getUsedWidth();
+        page.height = packer.getUsedHeight();
+        return leftover;
+    }
+
+    private CompletableFuture<List<Page>> writePages(List<Page> pages)
+    {
+        if (cancelled)
+        {
+            throw new IllegalStateException("cancelled");
+        }
+
+        try
+        {
+            Files.createDirectories(dir.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++)
+        {
+            Page page = pages.get(i);
+            int index = i;
+
+            for (Sprite s : page.sprites)
+            {
+                s.page = index;
+            }
+
+            writes.add(CompletableFuture.runAsync(() ->
+            {
+                if (!cancelled)
+                {
+                    writePng(page, new File(dir, "atlas-" + index + ".png"));
+                }
+            }, workers));
+        }
+
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(v ->
+                {
+                    if (cancelled)
+                    {
+                        throw new IllegalStateException("cancelled");
+                    }
+
+                    deleteStalePages(pages.size());
+                    writeIndex(pages);
+                    return pages;
+                }, workers);
+    }
+
+    /**
+     * Removes pages left over from an earlier export of the same range that needed more of them.
+     */
+    private void deleteStalePages(int pageCount)
+    {
+        File[] files = dir.listFiles((d, name) -> name.matches("atlas-\\d{1,9}\\.png"));
+        if (files == null)
+        {
+            return;
+        }
+
+        for (File file : files)
+        {
+            String name = file.getName();
+            int index = Integer.parseInt(name.substring("atlas-".length(), name.length() - ".png".length()));
+            if (index >= pageCount && !file.delete())
+            {
+                log.warn("Failed to delete stale atlas page {}", file);
+            }
+        }
+    }
+
+    private static void writePng(Page page, File file)
+    {
+        BufferedImage image = new BufferedImage(page.width, page.height, BufferedImage.TYPE_INT_ARGB);
+
+        for (Sprite s : page.sprites)
+        {
+            int[] argb = new int[s.pixels.length];
+            for (int i = 0; i < argb.length; i++)
+            {
+                // Sprites use 0 for transparent and have no alpha channel
+                int px = s.pixels[i];
+                argb[i] = px == 0 ? 0 : 0xFF000000 | px;
+            }
+
+            image.setRGB(s.x, s.y, s.width, s.height, argb, 0, s.width);
+        }
+
+        try
+        {
+            ImageIO.write(image, "png", file);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeIndex(List<Page> pages)
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(new File(dir, "atlas.json").toPath(), StandardCharsets.UTF_8))
+        {
+            out.write("{\"pages\":[");
+            for (int i = 0; i < pages.size(); i++)
+            {
+                Page page = pages.get(i);
+                if (i > 0) out.write(',');
+                out.write(String.format("{\"file\":\"atlas-%d.png\",\"width\":%d,\"height\":%d}", i, page.width, page.height));
+            }
+
+            out.write("],\"sprites\":[");
+            boolean first = true;
+            for (Page page : pages)
+            {
+                for (Sprite s : page.sprites)
+                {
+                    if (!first) out.write(',');
+                    first = false;
+                    out.write(String.format("\n{\"id\":%d,\"frame\":%d,\"page\":%d,\"x\":%d,\"y\":%d,\"width\":%d,\"height\":%d}",
+                            s.id, s.frame, s.page, s.x, s.y, s.width, s.height));
+                }
+            }
+
+            out.write("\n]}\n");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cacheviewer;
+
+import net.runelite.client.config.Config;
+import net.runelite.client.config.ConfigGroup;
+import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+
+@ConfigGroup(CacheViewerConfig.GROUP)
+public interface CacheViewerConfig extends Config
+{
+    String GROUP = "cacheviewer";
+
+    @Range(min = 1, max = 256)
+    @ConfigItem(
+            keyName = "thumbnailCacheSize",
+            name = "Thumbnail cache (MB)",
+            description = "Off-heap memory used to keep sprite and item thumbnails around"
+    )
+    default int thumbnailCacheSize()
+    {
+        return 16;
+    }
+}
@@ -0,0 +1,46 @@
+package com.cacheviewer;
+
+import net.runelite.api.Client;
+
+public enum CacheViewerDefinitionType
+{
+    ITEMS("items", 10),
+    NPCS("npcs", 9);
+
+    private final String name;
+
+    // Group in the config index (2) holding the definitions
+    private final int archiveId;
+
+    CacheViewerDefinitionType(String name, int archiveId)
+    {
+        this.name = name;
+        this.archiveId = archiveId;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Must be called on the client thread. Returns null if the archive isn't loaded.
+     */
+    public int[] getIds(Client client)
+    {
+        return client.getIndexConfig().getFileIds(archiveId);
+    }
+
+    public static CacheViewerDefinitionType fromName(String name)
+    {
+        for (CacheViewerDefinitionType type : values())
+        {
+            if (type.name.equalsIgnoreCase(name))
+            {
+                return type;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,537 @@
+package com.cacheviewer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.IntegerNode;
+import net.runelite.api.IterableHashTable;
+import net.runelite.api.ItemComposition;
+import net.runelite.api.NPCComposition;
+import net.runelite.api.Node;
+import net.runelite.api.ObjectNode;
+import net.runelite.api.ParamHolder;
+import net.runelite.client.callback.ClientThread;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams item/npc definitions to a CSV or JSONL file.
+ * Definitions are read in slices on the client thread and handed to a writer thread
+ * through a bounded queue, so only a queue's worth of rows is ever held in memory.
+ */
+@Slf4j
+public class CacheViewerDumper
+{
+    public enum Format
+    {
+        CSV("csv"),
+        JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension)
+        {
+            this.extension = extension;
+        }
+
+        public static Format fromName(String name)
+        {
+            for (Format format : values())
+            {
+                if (format.extension.equalsIgnoreCase(name))
+                {
+                    return format;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final String[] ITEM_COLUMNS = {
+            "id", "name", "members", "stackable", "tradeable", "price", "haPrice",
+            "note", "linkedNoteId", "placeholderId", "placeholderTemplateId",
+            "inventoryModel", "inventoryActions", "params"
+    };
+
+    private static final String[] NPC_COLUMNS = {
+            "id", "name", "combatLevel", "stats", "size", "widthScale", "heightScale",
+            "minimapVisible", "interactible", "follower",
+            "models", "chatheadModels", "actions", "params"
+    };
+
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+    private static final int QUEUE_CAPACITY = 2048;
+
+    // How often an idle writer wakes up to look for a cancel
+    private static final long WRITER_POLL_MILLIS = 100;
+
+    // Marks the end of the stream for the writer thread
+    private static final Object[] END = new Object[0];
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final CacheViewerDefinitionType type;
+    private final Format format;
+    private final File file;
+    private final Consumer<String> onComplete;
+
+    private final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private volatile boolean running = false;
+    private volatile boolean cancelled = false;
+    private ReadTask readTask;
+    private long startNanos;
+
+    public CacheViewerDumper(
+            Client client,
+            ClientThread clientThread,
+            CacheViewerDefinitionType type,
+            Format format,
+            File outputDir,
+            Consumer<String> onComplete)
+    {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.type = type;
+        this.format = format;
+        this.file = new File(outputDir, type.getName() + "-" + System.currentTimeMillis() + "." + format.extension);
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public void start()
+    {
+        int[] ids = type.getIds(client);
+        if (ids == null)
+        {
+            onComplete.accept("Unable to dump " + type.getName() + ", definitions aren't loaded.");
+            return;
+        }
+
+        running = true;
+        startNanos = System.nanoTime();
+        readTask = new ReadTask(ids);
+
+        Thread writer = new Thread(this::writeLoop, "cacheviewer-dump");
+        writer.setDaemon(true);
+        writer.start();
+
+        clientThread.invokeLater(readTask);
+    }
+
+    public void cancel()
+    {
+        if (readTask != null)
+        {
+            readTask.cancel();
+        }
+
+        // The writer polls, so it notices this even when nothing more is queued
+        cancelled = true;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    private class ReadTask extends CacheViewerTickTask
+    {
+        ReadTask(int[] ids)
+        {
+            super(ids, TICK_BUDGET_NANOS);
+        }
+
+        private Object[] pending;
+
+        @Override
+        protected boolean process(int id)
+        {
+            if (pending == null)
+            {
+                pending = type == CacheViewerDefinitionType.ITEMS
+                        ? readItem(id)
+                        : readNpc(id);
+
+                // Missing definitions are left out rather than written as a short row
+                if (pending == null)
+                {
+                    return true;
+                }
+            }
+
+            // Writer is behind, hold on to the row and let the game carry on
+            if (!queue.offer(pending))
+            {
+                return false;
+            }
+
+            pending = null;
+            return true;
+        }
+
+        @Override
+        protected boolean finish()
+        {
+            return queue.offer(END);
+        }
+    }
+
+    /**
+     * @return the row, or null if there's no definition for the id
+     */
+    private Object[] readItem(int id)
+    {
+        ItemComposition item = client.getItemDefinition(id);
+        if (item == null)
+        {
+            return null;
+        }
+
+        return new Object[]{
+                id,
+                item.getName(),
+                item.isMembers(),
+                item.isStackable(),
+                item.isTradeable(),
+                item.getPrice(),
+                item.getHaPrice(),
+                item.getNote(),
+                item.getLinkedNoteId(),
+                item.getPlaceholderId(),
+                item.getPlaceholderTemplateId(),
+                item.getInventoryModel(),
+                copy(item.getInventoryActions()),
+                readParams(item)
+        };
+    }
+
+    private Object[] readNpc(int id)
+    {
+        NPCComposition npc = client.getNpcDefinition(id);
+        if (npc == null)
+        {
+            return null;
+        }
+
+        return new Object[]{
+                id,
+                npc.getName(),
+                npc.getCombatLevel(),
+                copy(npc.getStats()),
+                npc.getSize(),
+                npc.getWidthScale(),
+                npc.getHeightScale(),
+                npc.isMinimapVisible(),
+                npc.isInteractible(),
+                npc.isFollower(),
+                copy(npc.getModels()),
+                copy(npc.getChatheadModels()),
+                copy(npc.getActions()),
+                readParams(npc)
+        };
+    }
+
+    // Definitions are shared with the client, so arrays are copied before leaving the client thread
+    private static int[] copy(int[] a)
+    {
+        return a == null ? null : a.clone();
+    }
+
+    private static String[] copy(String[] a)
+    {
+        return a == null ? null : a.clone();
+    }
+
+    static Map<Integer, Object> readParams(ParamHolder holder)
+    {
+        IterableHashTable<Node> params = holder.getParams();
+        if (params == null)
+        {
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, Object> values = new TreeMap<>();
+        for (Node node : params)
+        {
+            int key = (int) node.getHash();
+
+            if (node instanceof IntegerNode)
+            {
+                values.put(key, ((IntegerNode) node).getValue());
+            }
+            else if (node instanceof ObjectNode)
+            {
+                values.put(key, String.valueOf(((ObjectNode) node).getValue()));
+            }
+        }
+
+        return values;
+    }
+
+
+
+    private void writeLoop()
+    {
+        String[] columns = type == CacheViewerDefinitionType.ITEMS ? ITEM_COLUMNS : NPC_COLUMNS;
+        int rows = 0;
+        String error = null;
+
+        try
+        {
+            Files.createDirectories(file.getParentFile().toPath());
+
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+            {
+                if (format == Format.CSV)
+                {
+                    writeCsvRow(out, columns);
+                }
+
+                while (!cancelled)
+                {
+                    Object[] row = queue.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (row == null)
+                    {
+                        continue;
+                    }
+
+                    if (row == END)
+                    {
+                        break;
+                    }
+
+                    if (format == Format.CSV)
+                    {
+                        writeCsvRow(out, row);
+                    }
+                    else
+                    {
+                        writeJsonRow(out, columns, row);
+                    }
+
+                    rows++;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write definition dump {}", file, e);
+            error = e.getMessage();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        }
+        finally
+        {
+            // Make sure the reader stops if we bailed out early
+            if (readTask != null)
+            {
+                readTask.cancel();
+            }
+
+            running = false;
+        }
+
+        if (cancelled && error == null)
+        {
+            onComplete.accept("Dump of " + type.getName() + " cancelled after " + rows + " rows.");
+        }
+        else if (error != null)
+        {
+            onComplete.accept("Dump of " + type.getName() + " failed: " + error);
+        }
+        else
+        {
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            onComplete.accept("Dumped " + rows + " " + type.getName() + " to " + file.getName() + " in " + ms + "ms.");
+        }
+    }
+
+
+
+    private static void writeCsvRow(Writer out, Object[] row) throws IOException
+    {
+        for (int i = 0; i < row.length; i++)
+        {
+            if (i > 0)
+            {
+                out.write(',');
+            }
+
+            out.write(escapeCsv(toCsvValue(row[i])));
+        }
+
+        out.write('\n');
+    }
+
+    private static String toCsvValue(Object value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+
+        if (value instanceof int[])
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int v : (int[]) value)
+            {
+                if (sb.length() > 0) sb.append('|');
+                sb.append(v);
+            }
+            return sb.toString();
+        }
+
+        if (value instanceof String[])
+        {
+            // Keep empty slots so action indexes line up
+            String[] values = (String[]) value;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++)
+            {
+                if (i > 0) sb.append('|');
+                if (values[i] != null) sb.append(values[i]);
+            }
+            return sb.toString();
+        }
+
+        if (value instanceof Map)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet())
+            {
+                if (sb.length() > 0) sb.append(';');
+                sb.append(e.getKey()).append('=').append(e.getValue());
+            }
+            return sb.toString();
+        }
+
+        return String.valueOf(value);
+    }
+
+    private static String escapeCsv(String s)
+    {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0)
+        {
+            return s;
+        }
+
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+
+
+    private static void writeJsonRow(Writer out, String[] columns, Object[] row) throws IOException
+    {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append('{');
+
+        for (int i = 0; i < row.length; i++)
+        {
+            if (i > 0) sb.append(',');
+            appendJsonString(sb, columns[i]);
+            sb.append(':');
+            appendJsonValue(sb, row[i]);
+        }
+
+        sb.append("}\n");
+        out.write(sb.toString());
+    }
+
+    private static void appendJsonValue(StringBuilder sb, Object value)
+    {
+        if (value == null)
+        {
+            sb.append("null");
+        }
+        else if (value instanceof String)
+        {
+            appendJsonString(sb, (String) value);
+        }
+        else if (value instanceof int[])
+        {
+            int[] values = (int[]) value;
+            sb.append('[');
+            for (int i = 0; i < values.length; i++)
+            {
+                if (i > 0) sb.append(',');
+                sb.append(values[i]);
+            }
+            sb.append(']');
+        }
+        else if (value instanceof String[])
+        {
+            String[] values = (String[]) value;
+            sb.append('[');
+            for (int i = 0; i < values.length; i++)
+            {
+                if (i > 0) sb.append(',');
+                appendJsonValue(sb, values[i]);
+            }
+            sb.append(']');
+        }
+        else if (value instanceof Map)
+        {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet())
+            {
+                if (!first) sb.append(',');
+                first = false;
+                appendJsonString(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                appendJsonValue(sb, e.getValue());
+            }
+            sb.append('}');
+        }
+        else
+        {
+            // Integers and booleans
+            sb.append(value);
+        }
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s)
+    {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                    {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,654 @@
+package com.cacheviewer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.ModelData;
+import net.runelite.api.SpritePixels;
+import net.runelite.client.callback.ClientThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Finds models or sprites with identical content under different ids.
+ * Geometry/pixels are copied on the client thread in time boxed slices and hashed in batches
+ * on the worker pool (64 bit, xxHash64 style mixing). Ids sharing a hash form a cluster.
+ * The id to hash table is saved between sessions. The client doesn't expose a checksum of the
+ * model/sprite archives and the cache can change without a revision bump, so the saved table is never
+ * trusted as is, every scan re-hashes and compares against it to report what changed since.
+ * Matches aren't compared byte for byte, a 64 bit collision across the cache is unlikely enough.
+ */
+@Slf4j
+public class CacheViewerDuplicateFinder
+{
+    public enum Kind
+    {
+        MODELS("models", CacheViewerArchives.MODELS),
+        SPRITES("sprites", CacheViewerArchives.SPRITES);
+
+        private final String name;
+        private final int archive;
+
+        Kind(String name, int archive)
+        {
+            this.name = name;
+            this.archive = archive;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Must be called on the client thread. Returns -1 if the archive isn't loaded.
+         */
+        public int getLastId(Client client)
+        {
+            return CacheViewerArchives.getLastId(client, archive);
+        }
+
+        public static Kind fromName(String name)
+        {
+            for (Kind kind : values())
+            {
+                if (kind.name.equalsIgnoreCase(name))
+                {
+                    return kind;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static final int BATCH_SIZE = 256;
+    // Copied batches waiting on the workers, capture pauses past this so memory stays bounded
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private static final int FILE_MAGIC = 0x43564448; // CVDH
+    private static final int FILE_VERSION = 1;
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final ExecutorService workers;
+    private final Kind kind;
+    private final int lastId;
+    private final File file;
+
+    private Consumer<String> onReady;
+
+    // Indexed by id, 0 when there is nothing at that id. Workers write disjoint slots.
+    private long[] hashes;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile boolean running = false;
+    private volatile boolean cancelled = false;
+    // -1 when there was no saved table to compare against
+    private volatile int changedCount = -1;
+    private CaptureTask captureTask;
+    private long startNanos;
+    private volatile long elapsedMillis;
+
+    // Null until grouped, never changes afterwards
+    private volatile Map<Integer, int[]> clusters;
+    private volatile int[] duplicateIds;
+    private volatile int clusterCount;
+
+    /**
+     * Must be created on the client thread.
+     */
+    public CacheViewerDuplicateFinder(
+            Client client,
+            ClientThread clientThread,
+            ExecutorService workers,
+            Kind kind,
+            int lastId,
+            File outputDir)
+    {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.workers = workers;
+        this.kind = kind;
+        this.lastId = lastId;
+        this.file = new File(outputDir, "duplicates-" + kind.getName() + ".bin");
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public int getLastId()
+    {
+        return lastId;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public boolean isReady()
+    {
+        return clusters != null;
+    }
+
+    /**
+     * @return how many ids hash differently than in the saved table, or -1 if there wasn't one
+     */
+    public int getChangedCount()
+    {
+        return changedCount;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * onReady is called from a worker once grouped, with an error or null.
+     */
+    public void start(Consumer<String> onReady)
+    {
+        this.onReady = onReady;
+        int[] ids = allIds();
+
+        // Only once the ids are allocated, a failure above must not leave the finder looking busy
+        running = true;
+        startNanos = System.nanoTime();
+
+        CompletableFuture<long[]> saved = CompletableFuture.supplyAsync(this::load, workers);
+
+        capture(ids)
+                .thenCombineAsync(saved, (fresh, previous) ->
+                {
+                    if (previous != null)
+                    {
+                        changedCount = countChanged(previous, fresh);
+                    }
+
+                    hashes = fresh;
+                    save();
+                    group();
+                    return null;
+                }, workers)
+                .whenComplete((v, error) -> complete(error));
+    }
+
+    private int[] allIds()
+    {
+        int[] ids = new int[lastId + 1];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    private static int countChanged(long[] previous, long[] fresh)
+    {
+        int changed = 0;
+        for (int id = 0; id < fresh.length; id++)
+        {
+            long before = id < previous.length ? previous[id] : 0;
+            if (before != fresh[id])
+            {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    public void cancel()
+    {
+        if (captureTask != null)
+        {
+            captureTask.cancel();
+        }
+
+        cancelled = true;
+    }
+
+    private void complete(Throwable error)
+    {
+        running = false;
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        if (cancelled)
+        {
+            onReady.accept("Duplicate scan of " + kind.getName() + " cancelled.");
+            return;
+        }
+
+        if (error != null)
+        {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            log.warn("Failed to find duplicate {}", kind.getName(), cause);
+            onReady.accept("Duplicate scan of " + kind.getName() + " failed: " + cause.getMessage());
+            return;
+        }
+
+        onReady.accept(null);
+    }
+
+    /**
+     * Hashes the given ids, the result is indexed by id with 0 for empty and unvisited ids.
+     */
+    private CompletableFuture<long[]> capture(int[] ids)
+    {
+        CompletableFuture<long[]> captured = new CompletableFuture<>();
+
+        clientThread.invokeLater(() ->
+        {
+            if (cancelled)
+            {
+                captured.cancel(false);
+                return;
+            }
+
+            captureTask = new CaptureTask(ids, new long[lastId + 1], captured);
+            clientThread.invokeLater(captureTask);
+        });
+
+        return captured;
+    }
+
+    private class CaptureTask extends CacheViewerTickTask
+    {
+        private final long[] target;
+        private final CompletableFuture<long[]> captured;
+        private final List<CompletableFuture<Void>> batches = new ArrayList<>();
+
+        private int[] batchIds = new int[BATCH_SIZE];
+        private int[][] batchData = new int[BATCH_SIZE][];
+        private int batchSize = 0;
+
+        CaptureTask(int[] ids, long[] target, CompletableFuture<long[]> captured)
+        {
+            super(ids, TICK_BUDGET_NANOS);
+            this.target = target;
+            this.captured = captured;
+        }
+
+        @Override
+        protected boolean process(int id)
+        {
+            if (batchSize == BATCH_SIZE)
+            {
+                // Workers are behind, retry next tick
+                if (inFlight.get() >= MAX_IN_FLIGHT)
+                {
+                    return false;
+                }
+
+                submit();
+            }
+
+            int[] data = kind == Kind.MODELS
+                    ? copyModel(client.loadModelData(id))
+                    : copySprite(client.getSprites(client.getIndexSprites(), id, 0));
+
+            if (data != null)
+            {
+                batchIds[batchSize] = id;
+                batchData[batchSize] = data;
+                batchSize++;
+            }
+
+            return true;
+        }
+
+        @Override
+        protected boolean finish()
+        {
+            if (batchSize > 0)
+            {
+                submit();
+            }
+
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                    .whenComplete((v, error) ->
+                    {
+                        if (error != null)
+                        {
+                            captured.completeExceptionally(error);
+                        }
+                        else
+                        {
+                            captured.complete(target);
+                        }
+                    });
+            return true;
+        }
+
+        @Override
+        public boolean getAsBoolean()
+        {
+            boolean done = super.getAsBoolean();
+            if (done && isCancelled())
+            {
+                captured.cancel(false);
+            }
+            return done;
+        }
+
+        private void submit()
+        {
+            int[] ids = batchIds;
+            int[][] data = batchData;
+            int count = batchSize;
+
+            batchIds = new int[BATCH_SIZE];
+            batchData = new int[BATCH_SIZE][];
+            batchSize = 0;
+
+            inFlight.incrementAndGet();
+            batches.add(CompletableFuture.runAsync(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < count && !cancelled; i++)
+                    {
+                        target[ids[i]] = hash(data[i]);
+                    }
+                }
+                finally
+                {
+                    inFlight.decrementAndGet();
+                }
+            }, workers));
+        }
+    }
+
+    // vertex count, face count, then x/y/z, face indices and face colours
+    private static int[] copyModel(ModelData model)
+    {
+        if (model == null || model.getVerticesCount() <= 0)
+        {
+            return null;
+        }
+
+        int vertices = model.getVerticesCount();
+        int faces = model.getFaceCount();
+
+        float[] x = model.getVerticesX();
+        float[] y = model.getVerticesY();
+        float[] z = model.getVerticesZ();
+        int[] a = model.getFaceIndices1();
+        int[] b = model.getFaceIndices2();
+        int[] c = model.getFaceIndices3();
+        short[] colors = model.getFaceColors();
+
+        int[] out = new int[2 + vertices * 3 + faces * 4];
+        int p = 0;
+
+        out[p++] = vertices;
+        out[p++] = faces;
+
+        for (int i = 0; i < vertices; i++)
+        {
+            out[p++] = Float.floatToIntBits(x[i]);
+            out[p++] = Float.floatToIntBits(y[i]);
+            out[p++] = Float.floatToIntBits(z[i]);
+        }
+
+        for (int i = 0; i < faces; i++)
+        {
+            out[p++] = a[i];
+            out[p++] = b[i];
+            out[p++] = c[i];
+            out[p++] = colors != null ? colors[i] : 0;
+        }
+
+        return out;
+    }
+
+    // frame count, then width, height and pixels per frame
+    private static int[] copySprite(SpritePixels[] frames)
+    {
+        if (frames == null || frames.length == 0)
+        {
+            return null;
+        }
+
+        int length = 1;
+        for (SpritePixels frame : frames)
+        {
+            length += 2 + (frame != null ? frame.getPixels().length : 0);
+        }
+
+        int[] out = new int[length];
+        int p = 0;
+
+        out[p++] = frames.length;
+        for (SpritePixels frame : frames)
+        {
+            if (frame == null)
+            {
+                p += 2;
+                continue;
+            }
+
+            int[] pixels = frame.getPixels();
+            out[p++] = frame.getWidth();
+            out[p++] = frame.getHeight();
+            System.arraycopy(pixels, 0, out, p, pixels.length);
+            p += pixels.length;
+        }
+
+        return out;
+    }
+
+    /**
+     * 64 bit hash of the whole array, two ints per round. Never 0, that marks a missing id.
+     */
+    static long hash(int[] data)
+    {
+        long h = P5 + data.length * P1;
+        int i = 0;
+
+        for (; i + 1 < data.length; i += 2)
+        {
+            long k = (data[i] & 0xFFFFFFFFL) | (long) data[i + 1] << 32;
+            k *= P2;
+            k = Long.rotateLeft(k, 31);
+            k *= P1;
+
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+
+        if (i < data.length)
+        {
+            h ^= (data[i] & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+
+        // Avalanche so ids that differ in one vertex land far apart
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+
+        return h == 0 ? 1 : h;
+    }
+
+    private void group()
+    {
+        if (cancelled)
+        {
+            throw new IllegalStateException("cancelled");
+        }
+
+        // Ids are visited in ascending order, so every cluster comes out sorted
+        Map<Long, List<Integer>> byHash = new HashMap<>();
+        for (int id = 0; id < hashes.length; id++)
+        {
+            if (hashes[id] != 0)
+            {
+                byHash.computeIfAbsent(hashes[id], k -> new ArrayList<>(2)).add(id);
+            }
+        }
+
+        Map<Integer, int[]> built = new HashMap<>();
+        int count = 0;
+
+        for (List<Integer> list : byHash.values())
+        {
+            if (list.size() < 2)
+            {
+                continue;
+            }
+
+            int[] members = list.stream().mapToInt(Integer::intValue).toArray();
+            for (int id : members)
+            {
+                built.put(id, members);
+            }
+            count++;
+        }
+
+        int[] ids = built.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(ids);
+
+        duplicateIds = ids;
+        clusterCount = count;
+        clusters = built;
+    }
+
+    /**
+     * @return sorted ids that share their content with at least one other id, empty until ready
+     */
+    public int[] getDuplicateIds()
+    {
+        int[] ids = duplicateIds;
+        return ids != null ? ids : new int[0];
+    }
+
+    /**
+     * @return the sorted ids with the same content as this one (including it), or null if it's unique
+     */
+    public int[] getCluster(int id)
+    {
+        Map<Integer, int[]> c = clusters;
+        return c != null ? c.get(id) : null;
+    }
+
+    public int getClusterCount()
+    {
+        return clusterCount;
+    }
+
+    // magic, version, last id, entry count, then (id, hash) for every non empty id
+    private void save()
+    {
+        if (cancelled)
+        {
+            throw new IllegalStateException("cancelled");
+        }
+
+        int entries = 0;
+        for (long h : hashes)
+        {
+            if (h != 0)
+            {
+                entries++;
+            }
+        }
+
+        try
+        {
+            Files.createDirectories(file.getParentFile().toPath());
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath()))))
+            {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(lastId);
+                out.writeInt(entries);
+
+                for (int id = 0; id < hashes.length; id++)
+                {
+                    if (hashes[id] != 0)
+                    {
+                        out.writeInt(id);
+                        out.writeLong(hashes[id]);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the saved hashes up to lastId, or null if there are none or they cover fewer ids
+     */
+    private long[] load()
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+        {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || in.readInt() < lastId)
+            {
+                return null;
+            }
+
+            long[] loaded = new long[lastId + 1];
+            int entries = in.readInt();
+
+            for (int i = 0; i < entries; i++)
+            {
+                int id = in.readInt();
+                long h = in.readLong();
+
+                if (id >= 0 && id <= lastId)
+                {
+                    loaded[id] = h;
+                }
+            }
+
+            return loaded;
+        }
+        catch (IOException e)
+        {
+            // Rebuilt from the cache below
+            log.warn("Failed to read {}", file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.cacheviewer;
+
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.ItemQuantityMode;
+import net.runelite.api.SpritePixels;
+import net.runelite.api.widgets.*;
+import net.runelite.client.callback.ClientThread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Paged grid of inventory style item icons.
+ * Icons already in the thumbnail store show straight away, the rest are generated
+ * a few per tick so a page fills in progressively.
+ */
+public class CacheViewerIconGallery
+{
+    public static final int PAGE_SIZE = 100;
+
+    private static final int COLUMNS = 10;
+    private static final int CELL_WIDTH = 40;
+    private static final int CELL_HEIGHT = 36;
+
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    // Sprite override ids, after the ones used by the thumbnail strip
+    private static final int SPRITE_ID_BASE = 0x7F000100;
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final CacheViewerThumbnailStore store;
+
+    private final Widget[] cells = new Widget[PAGE_SIZE];
+    private final long[] shownKeys = new long[PAGE_SIZE];
+    private final boolean[] pending = new boolean[PAGE_SIZE];
+
+    private IntConsumer onSelect;
+
+    private int page = -1;
+    private int itemCount = -1;
+    private int quantity = 1;
+    private int border = 1;
+
+    private boolean visible = false;
+    private boolean generating = false;
+
+    public CacheViewerIconGallery(Client client, ClientThread clientThread, CacheViewerThumbnailStore store)
+    {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.store = store;
+    }
+
+    public void setOnSelect(IntConsumer onSelect)
+    {
+        this.onSelect = onSelect;
+    }
+
+    /**
+     * Changes the quantity and border icons are generated with, must be called on the client thread.
+     */
+    public void setStyle(int quantity, int border)
+    {
+        this.quantity = Math.max(1, quantity);
+        this.border = Math.max(0, Math.min(2, border));
+        invalidate();
+    }
+
+    public static int getFirstItem(int page)
+    {
+        return page * PAGE_SIZE;
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public int getItemCount()
+    {
+        if (itemCount < 0)
+        {
+            int[] ids = CacheViewerDefinitionType.ITEMS.getIds(client);
+            if (ids == null)
+            {
+                // Definitions not loaded yet, try again next time
+                return 0;
+            }
+
+            itemCount = ids.length;
+        }
+
+        return itemCount;
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public int getLastPage()
+    {
+        return Math.max(0, (getItemCount() - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Must be called on the client thread, the page is clamped to the last one.
+     */
+    public void show(Widget parent, int requestedPage)
+    {
+        ensureWidgets(parent);
+
+        visible = true;
+        page = Math.max(0, Math.min(requestedPage, getLastPage()));
+        int count = getItemCount();
+
+        boolean changed = false;
+        boolean missing = false;
+
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            Widget cell = cells[i];
+            int itemId = getFirstItem(page) + i;
+
+            if (itemId >= count)
+            {
+                cell.setHidden(true);
+                pending[i] = false;
+                continue;
+            }
+
+            long key = CacheViewerThumbnailStore.itemKey(itemId, quantity, border);
+            cell.setHidden(false);
+
+            if (shownKeys[i] == key)
+            {
+                pending[i] = false;
+                continue;
+            }
+
+            // Only icons we already have, anything else is left to the generator
+            CacheViewerThumbnailStore.Thumbnail thumb = store.get(key);
+            if (thumb != null)
+            {
+                setIcon(i, key, thumb);
+                pending[i] = false;
+                changed = true;
+            }
+            else
+            {
+                // The cached sprite would keep showing the old icon if this one can't be generated
+                if (client.getSpriteOverrides().remove(SPRITE_ID_BASE + i) != null)
+                {
+                    changed = true;
+                }
+                shownKeys[i] = 0;
+                pending[i] = true;
+                missing = true;
+            }
+        }
+
+        if (changed)
+        {
+            client.getWidgetSpriteCache().reset();
+        }
+
+        if (missing && !generating)
+        {
+            generating = true;
+            clientThread.invokeLater(this::generate);
+        }
+    }
+
+    public void hide()
+    {
+        visible = false;
+
+        for (Widget cell : cells)
+        {
+            if (cell != null)
+            {
+                cell.setHidden(true);
+            }
+        }
+    }
+
+    public void invalidate()
+    {
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            shownKeys[i] = 0;
+        }
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public void clear()
+    {
+        hide();
+        invalidate();
+
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            client.getSpriteOverrides().remove(SPRITE_ID_BASE + i);
+        }
+    }
+
+    private boolean generate()
+    {
+        if (!visible)
+        {
+            generating = false;
+            return true;
+        }
+
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        boolean changed = false;
+        boolean done = true;
+
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            if (!pending[i])
+            {
+                continue;
+            }
+
+            if (System.nanoTime() >= deadline)
+            {
+                done = false;
+                break;
+            }
+
+            int itemId = getFirstItem(page) + i;
+            long key = CacheViewerThumbnailStore.itemKey(itemId, quantity, border);
+
+            SpritePixels sprite = client.createItemSprite(itemId, quantity, border, SpritePixels.DEFAULT_SHADOW_COLOR,
+                    quantity > 1 ? ItemQuantityMode.ALWAYS : ItemQuantityMode.NEVER, false, Constants.CLIENT_DEFAULT_ZOOM);
+
+            pending[i] = false;
+
+            if (sprite == null)
+            {
+                continue;
+            }
+
+            CacheViewerThumbnailStore.Thumbnail thumb =
+                    store.put(key, sprite.getPixels(), sprite.getWidth(), sprite.getHeight());
+            if (thumb != null)
+            {
+                setIcon(i, key, thumb);
+                changed = true;
+            }
+        }
+
+        if (changed)
+        {
+            client.getWidgetSpriteCache().reset();
+        }
+
+        if (done)
+        {
+            generating = false;
+        }
+
+        return done;
+    }
+
+    private void setIcon(int slot, long key, CacheViewerThumbnailStore.Thumbnail thumb)
+    {
+        client.getSpriteOverrides().put(SPRITE_ID_BASE + slot,
+                client.createSpritePixels(thumb.getPixels(), thumb.getWidth(), thumb.getHeight()));
+        shownKeys[slot] = key;
+    }
+
+    private void ensureWidgets(Widget parent)
+    {
+        // The interface gets rebuilt when reopened, so check our widgets still belong to it
+        if (cells[0] != null && isChildOf(cells[0], parent))
+        {
+            return;
+        }
+
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            Widget cell = parent.createChild(-1, WidgetType.GRAPHIC);
+            int slot = i;
+
+            cell.setOriginalX((i % COLUMNS) * CELL_WIDTH - (COLUMNS - 1) * CELL_WIDTH / 2);
+            cell.setOriginalY((i / COLUMNS) * CELL_HEIGHT + 4);
+            cell.setOriginalWidth(CacheViewerThumbnailStore.MAX_SIZE);
+            cell.setOriginalHeight(CacheViewerThumbnailStore.MAX_SIZE);
+
+            cell.setXPositionMode(WidgetPositionMode.ABSOLUTE_CENTER);
+            cell.setYPositionMode(WidgetPositionMode.ABSOLUTE_TOP);
+            cell.setWidthMode(WidgetSizeMode.ABSOLUTE);
+            cell.setHeightMode(WidgetSizeMode.ABSOLUTE);
+
+            cell.setSpriteId(SPRITE_ID_BASE + i);
+
+            cell.setAction(0, "View");
+            cell.setHasListener(true);
+            cell.setOnOpListener((JavaScriptCallback) e ->
+            {
+                if (onSelect != null)
+                {
+                    onSelect.accept(getFirstItem(page) + slot);
+                }
+            });
+
+            cell.revalidate();
+            cells[i] = cell;
+        }
+
+        invalidate();
+    }
+
+    private static boolean isChildOf(Widget child, Widget parent)
+    {
+        Widget[] children = parent.getDynamicChildren();
+        if (children == null)
+        {
+            return false;
+        }
+
+        for (Widget c : children)
+        {
+            if (c == child)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
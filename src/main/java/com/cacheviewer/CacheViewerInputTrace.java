@@ -0,0 +1,335 @@
+package com.cacheviewer;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact recording of the input the viewer receives, so sessions can be replayed.
+ * Each event is a type byte, the time since the previous event and a few zigzag varints.
+ * Recorded into memory on the input thread, nothing touches disk until it's saved.
+ */
+public class CacheViewerInputTrace
+{
+    public static final int KEY_PRESSED = 1;
+    public static final int KEY_TYPED = 2;
+    public static final int MOUSE_PRESSED = 3;
+    public static final int MOUSE_RELEASED = 4;
+    public static final int MOUSE_DRAGGED = 5;
+    public static final int MOUSE_WHEEL = 6;
+    public static final int CATEGORY = 7;
+    public static final int SEARCH = 8;
+    public static final int SHOW_ITEM = 9;
+    public static final int RESULTS = 10;
+
+    private static final int MAGIC = 0x43565452; // CVTR
+    // 2 added SEARCH, SHOW_ITEM and RESULTS, version 1 traces still read
+    private static final int VERSION = 2;
+
+    public static final class Event
+    {
+        private final int type;
+        private final long time;
+        private final int a;
+        private final int b;
+        private final int c;
+        private final String text;
+        private final int[] ids;
+
+        Event(int type, long time, int a, int b, int c, String text, int[] ids)
+        {
+            this.type = type;
+            this.time = time;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.text = text;
+            this.ids = ids;
+        }
+
+        public int getType()
+        {
+            return type;
+        }
+
+        /**
+         * Milliseconds since the first event of the trace.
+         */
+        public long getTime()
+        {
+            return time;
+        }
+
+        // Key events: key code, key char, modifiers
+        // Mouse events: x, y, modifiers (wheel rotation for MOUSE_WHEEL)
+        // SHOW_ITEM: item id, RESULTS: id count or -1 when cleared
+        public int getA()
+        {
+            return a;
+        }
+
+        public int getB()
+        {
+            return b;
+        }
+
+        public int getC()
+        {
+            return c;
+        }
+
+        /**
+         * Category name for CATEGORY and RESULTS events.
+         */
+        public String getText()
+        {
+            return text;
+        }
+
+        /**
+         * Sorted result ids for RESULTS events, null when cleared.
+         */
+        public int[] getIds()
+        {
+            return ids;
+        }
+    }
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    private long lastTime = -1;
+    private int count = 0;
+
+    public CacheViewerInputTrace()
+    {
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+        catch (IOException e)
+        {
+            // Can't happen with a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void keyPressed(KeyEvent e)
+    {
+        write(KEY_PRESSED, e.getWhen(), e.getKeyCode(), e.getKeyChar(), e.getModifiersEx(), null, null);
+    }
+
+    public void keyTyped(KeyEvent e)
+    {
+        write(KEY_TYPED, e.getWhen(), e.getKeyCode(), e.getKeyChar(), e.getModifiersEx(), null, null);
+    }
+
+    public void mousePressed(MouseEvent e)
+    {
+        write(MOUSE_PRESSED, e.getWhen(), e.getX(), e.getY(), e.getModifiersEx(), null, null);
+    }
+
+    public void mouseReleased(MouseEvent e)
+    {
+        write(MOUSE_RELEASED, e.getWhen(), e.getX(), e.getY(), e.getModifiersEx(), null, null);
+    }
+
+    public void mouseDragged(MouseEvent e)
+    {
+        write(MOUSE_DRAGGED, e.getWhen(), e.getX(), e.getY(), e.getModifiersEx(), null, null);
+    }
+
+    public void mouseWheelMoved(MouseWheelEvent e)
+    {
+        write(MOUSE_WHEEL, e.getWhen(), e.getX(), e.getY(), e.getWheelRotation(), null, null);
+    }
+
+    public void category(String category)
+    {
+        write(CATEGORY, System.currentTimeMillis(), 0, 0, 0, category, null);
+    }
+
+    /**
+     * The search box was clicked.
+     */
+    public void search()
+    {
+        write(SEARCH, System.currentTimeMillis(), 0, 0, 0, null, null);
+    }
+
+    /**
+     * An item was opened from the icon gallery.
+     */
+    public void showItem(int itemId)
+    {
+        write(SHOW_ITEM, System.currentTimeMillis(), itemId, 0, 0, null, null);
+    }
+
+    /**
+     * A category was filtered to sorted ids (::cachefind, ::cachedupes), or cleared with null.
+     */
+    public void results(String category, int[] ids)
+    {
+        write(RESULTS, System.currentTimeMillis(), ids != null ? ids.length : -1, 0, 0, category, ids);
+    }
+
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+    public synchronized byte[] toByteArray()
+    {
+        return bytes.toByteArray();
+    }
+
+    private synchronized void write(int type, long when, int a, int b, int c, String text, int[] ids)
+    {
+        long delta = lastTime < 0 ? 0 : Math.max(0, when - lastTime);
+        lastTime = lastTime < 0 ? when : Math.max(lastTime, when);
+
+        try
+        {
+            out.writeByte(type);
+            writeVarLong(delta);
+            writeVarInt(a);
+            writeVarInt(b);
+            writeVarInt(c);
+
+            if (type == CATEGORY || type == RESULTS)
+            {
+                byte[] s = text.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(s.length);
+                out.write(s);
+            }
+
+            if (ids != null)
+            {
+                // Sorted, so the gaps stay small
+                int prev = 0;
+                for (int id : ids)
+                {
+                    writeVarInt(id - prev);
+                    prev = id;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        count++;
+    }
+
+    private void writeVarInt(int v) throws IOException
+    {
+        writeVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long v) throws IOException
+    {
+        while ((v & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+
+
+    public static List<Event> read(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC)
+        {
+            throw new IOException("Not an input trace");
+        }
+
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException("Unsupported input trace version " + version);
+        }
+
+        List<Event> events = new ArrayList<>();
+        long time = 0;
+
+        while (true)
+        {
+            int type = in.read();
+            if (type < 0)
+            {
+                break;
+            }
+
+            time += readVarLong(in);
+            int a = readVarInt(in);
+            int b = readVarInt(in);
+            int c = readVarInt(in);
+
+            String text = null;
+            if (type == CATEGORY || type == RESULTS)
+            {
+                byte[] s = new byte[readVarInt(in)];
+                in.readFully(s);
+                text = new String(s, StandardCharsets.UTF_8);
+            }
+
+            int[] ids = null;
+            if (type == RESULTS && a >= 0)
+            {
+                ids = new int[a];
+                int prev = 0;
+                for (int i = 0; i < a; i++)
+                {
+                    prev += readVarInt(in);
+                    ids[i] = prev;
+                }
+            }
+
+            events.add(new Event(type, time, a, b, c, text, ids));
+        }
+
+        return events;
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int v = (int) readVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0)
+            {
+                throw new EOFException("Truncated input trace");
+            }
+
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return v;
+            }
+        }
+
+        throw new IOException("Malformed varint in input trace");
+    }
+}
@@ -0,0 +1,166 @@
+package com.cacheviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MaxRects bin packer (best short side fit) for a single atlas page.
+ * Not thread safe, each page gets its own packer.
+ */
+public class CacheViewerMaxRectsPacker
+{
+    private static final class Rect
+    {
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+
+        Rect(int x, int y, int width, int height)
+        {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean contains(Rect r)
+        {
+            return r.x >= x && r.y >= y
+                    && r.x + r.width <= x + width
+                    && r.y + r.height <= y + height;
+        }
+
+        boolean intersects(Rect r)
+        {
+            return r.x < x + width && r.x + r.width > x
+                    && r.y < y + height && r.y + r.height > y;
+        }
+    }
+
+    private final List<Rect> free = new ArrayList<>();
+
+    private int usedWidth = 0;
+    private int usedHeight = 0;
+
+    public CacheViewerMaxRectsPacker(int width, int height)
+    {
+        free.add(new Rect(0, 0, width, height));
+    }
+
+    /**
+     * @return the {x, y} the rectangle was placed at, or null if it doesn't fit
+     */
+    public int[] insert(int width, int height)
+    {
+        Rect best = null;
+        int bestShort = Integer.MAX_VALUE;
+        int bestLong = Integer.MAX_VALUE;
+
+        for (Rect r : free)
+        {
+            if (width > r.width || height > r.height)
+            {
+                continue;
+            }
+
+            int leftoverX = r.width - width;
+            int leftoverY = r.height - height;
+            int shortSide = Math.min(leftoverX, leftoverY);
+            int longSide = Math.max(leftoverX, leftoverY);
+
+            if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong))
+            {
+                best = r;
+                bestShort = shortSide;
+                bestLong = longSide;
+            }
+        }
+
+        if (best == null)
+        {
+            return null;
+        }
+
+        Rect placed = new Rect(best.x, best.y, width, height);
+        split(placed);
+        prune();
+
+        usedWidth = Math.max(usedWidth, placed.x + width);
+        usedHeight = Math.max(usedHeight, placed.y + height);
+
+        return new int[]{placed.x, placed.y};
+    }
+
+    public int getUsedWidth()
+    {
+        return usedWidth;
+    }
+
+    public int getUsedHeight()
+    {
+        return usedHeight;
+    }
+
+    // Replaces every free rect overlapping the placed one with the (up to 4) maximal rects around it
+    private void split(Rect placed)
+    {
+        List<Rect> added = new ArrayList<>();
+
+        for (int i = free.size() - 1; i >= 0; i--)
+        {
+            Rect r = free.get(i);
+            if (!r.intersects(placed))
+            {
+                continue;
+            }
+
+            free.remove(i);
+
+            if (placed.x > r.x)
+            {
+                added.add(new Rect(r.x, r.y, placed.x - r.x, r.height));
+            }
+            if (placed.x + placed.width < r.x + r.width)
+            {
+                added.add(new Rect(placed.x + placed.width, r.y, r.x + r.width - placed.x - placed.width, r.height));
+            }
+            if (placed.y > r.y)
+            {
+                added.add(new Rect(r.x, r.y, r.width, placed.y - r.y));
+            }
+            if (placed.y + placed.height < r.y + r.height)
+            {
+                added.add(new Rect(r.x, placed.y + placed.height, r.width, r.y + r.height - placed.y - placed.height));
+            }
+        }
+
+        free.addAll(added);
+    }
+
+    // Drops free rects fully contained in another one
+    private void prune()
+    {
+        for (int i = 0; i < free.size(); i++)
+        {
+            for (int j = i + 1; j < free.size(); j++)
+            {
+                Rect a = free.get(i);
+                Rect b = free.get(j);
+
+                if (b.contains(a))
+                {
+                    free.remove(i);
+                    i--;
+                    break;
+                }
+
+                if (a.contains(b))
+                {
+                    free.remove(j);
+                    j--;
+                }
+            }
+        }
+    }
+}
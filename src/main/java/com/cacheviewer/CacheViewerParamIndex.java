@@ -0,0 +1,337 @@
+package com.cacheviewer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.IntegerNode;
+import net.runelite.api.IterableHashTable;
+import net.runelite.api.Node;
+import net.runelite.api.ParamHolder;
+import net.runelite.client.callback.ClientThread;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from (param id, int value) to the item/npc ids that have it.
+ * Params are pulled on the client thread a slice per tick, grouping and compression
+ * happen on a worker. Each posting list is stored as delta encoded varints,
+ * intersections decode the smallest list and merge the rest against it.
+ * String params aren't indexed, and neither are the params of structs a definition references:
+ * the client doesn't expose param types, so a struct id can't be told apart from any other int value.
+ */
+@Slf4j
+public class CacheViewerParamIndex
+{
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final CacheViewerDefinitionType type;
+
+    // Filled on the client thread as (id, param, value) triples, in ascending id order
+    private int[] triples = new int[3 * 4096];
+    private int tripleCount = 0;
+
+    // Null until built, never changes afterwards
+    private volatile Map<Long, byte[]> postings;
+    private volatile boolean building = false;
+    private volatile long compressedBytes;
+
+    private CacheViewerTickTask readTask;
+
+    public CacheViewerParamIndex(CacheViewerDefinitionType type)
+    {
+        this.type = type;
+    }
+
+    public CacheViewerDefinitionType getType()
+    {
+        return type;
+    }
+
+    public boolean isReady()
+    {
+        return postings != null;
+    }
+
+    public boolean isBuilding()
+    {
+        return building;
+    }
+
+    /**
+     * Must be called on the client thread. onReady is called from a worker once built, with an error or null.
+     */
+    public void build(Client client, ClientThread clientThread, ExecutorService workers, Consumer<String> onReady)
+    {
+        int[] ids = type.getIds(client);
+        if (ids == null)
+        {
+            onReady.accept("Unable to index " + type.getName() + ", definitions aren't loaded.");
+            return;
+        }
+
+        building = true;
+
+        readTask = new CacheViewerTickTask(ids, TICK_BUDGET_NANOS)
+        {
+            @Override
+            protected boolean process(int id)
+            {
+                ParamHolder holder = type == CacheViewerDefinitionType.ITEMS
+                        ? client.getItemDefinition(id)
+                        : client.getNpcDefinition(id);
+                if (holder == null)
+                {
+                    return true;
+                }
+
+                IterableHashTable<Node> params = holder.getParams();
+                if (params == null)
+                {
+                    return true;
+                }
+
+                for (Node node : params)
+                {
+                    if (node instanceof IntegerNode)
+                    {
+                        addTriple(id, (int) node.getHash(), ((IntegerNode) node).getValue());
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            protected boolean finish()
+            {
+                workers.execute(() ->
+                {
+                    try
+                    {
+                        compress();
+                        onReady.accept(null);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        log.warn("Failed to build param index for {}", type.getName(), e);
+                        onReady.accept("Failed to index " + type.getName() + ": " + e.getMessage());
+                    }
+                    finally
+                    {
+                        building = false;
+                    }
+                });
+                return true;
+            }
+        };
+
+        clientThread.invokeLater(readTask);
+    }
+
+    /**
+     * Stops a build that is still reading definitions.
+     */
+    public void cancel()
+    {
+        if (readTask != null && !readTask.isCancelled() && postings == null)
+        {
+            readTask.cancel();
+            building = false;
+        }
+    }
+
+    private void addTriple(int id, int param, int value)
+    {
+        if (tripleCount + 3 > triples.length)
+        {
+            triples = Arrays.copyOf(triples, triples.length * 2);
+        }
+
+        triples[tripleCount++] = id;
+        triples[tripleCount++] = param;
+        triples[tripleCount++] = value;
+    }
+
+    private void compress()
+    {
+        // Group ids per (param, value), they come in ascending id order so each list is already sorted
+        Map<Long, int[]> lists = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+
+        for (int i = 0; i < tripleCount; i += 3)
+        {
+            long key = key(triples[i + 1], triples[i + 2]);
+            int[] list = lists.get(key);
+            int size = sizes.getOrDefault(key, 0);
+
+            if (list == null)
+            {
+                list = new int[4];
+            }
+            else if (size == list.length)
+            {
+                list = Arrays.copyOf(list, size * 2);
+            }
+
+            list[size] = triples[i];
+            lists.put(key, list);
+            sizes.put(key, size + 1);
+        }
+
+        Map<Long, byte[]> built = new HashMap<>(lists.size() * 2);
+        long bytes = 0;
+
+        for (Map.Entry<Long, int[]> e : lists.entrySet())
+        {
+            byte[] encoded = encode(e.getValue(), sizes.get(e.getKey()));
+            built.put(e.getKey(), encoded);
+            bytes += encoded.length;
+        }
+
+        // Only the compressed lists are kept
+        triples = null;
+        compressedBytes = bytes;
+        postings = built;
+    }
+
+    public int getPostingCount()
+    {
+        Map<Long, byte[]> p = postings;
+        return p == null ? 0 : p.size();
+    }
+
+    public long getCompressedBytes()
+    {
+        return compressedBytes;
+    }
+
+    /**
+     * @return sorted ids matching every (params[i], values[i]) pair, empty if the index isn't built
+     */
+    public int[] find(int[] params, int[] values)
+    {
+        Map<Long, byte[]> p = postings;
+        if (p == null || params.length == 0)
+        {
+            return new int[0];
+        }
+
+        byte[][] lists = new byte[params.length][];
+        for (int i = 0; i < params.length; i++)
+        {
+            lists[i] = p.get(key(params[i], values[i]));
+            if (lists[i] == null)
+            {
+                return new int[0];
+            }
+        }
+
+        // Start from the shortest list, the intersection can only shrink
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+
+        int[] result = decode(lists[0]);
+        for (int i = 1; i < lists.length && result.length > 0; i++)
+        {
+            result = intersect(result, lists[i]);
+        }
+
+        return result;
+    }
+
+    private static long key(int param, int value)
+    {
+        return (long) param << 32 | (value & 0xFFFFFFFFL);
+    }
+
+    // count, first id, then gaps between ids, all as unsigned varints
+    static byte[] encode(int[] ids, int count)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count + 4);
+        writeVarInt(out, count);
+
+        int prev = 0;
+        for (int i = 0; i < count; i++)
+        {
+            writeVarInt(out, ids[i] - prev);
+            prev = ids[i];
+        }
+
+        return out.toByteArray();
+    }
+
+    static int[] decode(byte[] data)
+    {
+        int[] pos = {0};
+        int[] ids = new int[readVarInt(data, pos)];
+
+        int prev = 0;
+        for (int i = 0; i < ids.length; i++)
+        {
+            prev += readVarInt(data, pos);
+            ids[i] = prev;
+        }
+
+        return ids;
+    }
+
+    /**
+     * Merges a sorted array with a compressed list without decoding the list into an array.
+     */
+    static int[] intersect(int[] ids, byte[] data)
+    {
+        int[] pos = {0};
+        int count = readVarInt(data, pos);
+
+        int[] out = new int[Math.min(ids.length, count)];
+        int n = 0;
+        int i = 0;
+        int value = 0;
+
+        for (int read = 0; read < count && i < ids.length; read++)
+        {
+            value += readVarInt(data, pos);
+
+            while (i < ids.length && ids[i] < value)
+            {
+                i++;
+            }
+
+            if (i < ids.length && ids[i] == value)
+            {
+                out[n++] = value;
+                i++;
+            }
+        }
+
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int v)
+    {
+        while ((v & ~0x7F) != 0)
+        {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos)
+    {
+        int v = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = data[pos[0]++];
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return v;
+            }
+        }
+    }
+}
@@ -1,14 +1,25 @@
 package com.cacheviewer;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Provides;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
 import net.runelite.api.ItemComposition;
 import net.runelite.api.NPCComposition;
+import net.runelite.api.events.CanvasSizeChanged;
 import net.runelite.api.events.ClientTick;
 import net.runelite.api.events.CommandExecuted;
+import net.runelite.api.events.ResizeableChanged;
+import net.runelite.api.events.WidgetClosed;
+import net.runelite.api.events.WidgetLoaded;
 import net.runelite.api.widgets.*;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
+import net.runelite.client.config.ConfigManager;
+import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.input.*;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
@@ -18,8 +29,17 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 @Slf4j
 @PluginDescriptor(
         name = "Cache Viewer",
@@ -30,24 +50,25 @@ public class CacheViewerPlugin extends Plugin
 {
     private static final int INTERFACE_GROUP_ID = 4;
 
+    static final File OUTPUT_DIR = new File(RuneLite.RUNELITE_DIR, "cacheviewer");
+
     private static final String CATEGORY_SPRITES = "Sprites";
     private static final String CATEGORY_MODELS  = "Models";
     private static final String CATEGORY_NPCS    = "Npcs";
     private static final String CATEGORY_CHATHEADS    = "Chatheads";
     private static final String CATEGORY_ITEMS   = "Items";
+    private static final String CATEGORY_ICONS   = "Icons";
 
-    private String selectedCategory = CATEGORY_SPRITES;
+    private static final int DEFAULT_ZOOM = 500;
 
-    private final Map<String, Integer> categoryIndex = new HashMap<>();
+    // Written by the input handlers, read once per update on the client thread
+    private final AtomicReference<CacheViewerViewState> viewState =
+            new AtomicReference<>(CacheViewerViewState.initial(CATEGORY_SPRITES, DEFAULT_ZOOM));
 
-    private boolean dragging = false;
+    // Only touched on the input thread
     private int lastMouseX;
     private int lastMouseY;
 
-    private int rotX = 0;
-    private int rotZ = 0;
-
-    private int modelZoom = 500;
     private static final int MIN_ZOOM = 250;
     private static final int MAX_ZOOM = 800;
 
@@ -56,19 +77,95 @@ public class CacheViewerPlugin extends Plugin
 
     @Inject private Client client;
     @Inject private ClientThread clientThread;
+    @Inject private EventBus eventBus;
     @Inject private KeyManager keyManager;
     @Inject private MouseManager mouseManager;
+    @Inject private CacheViewerConfig config;
 
     private volatile boolean cacheViewerVisible = false;
     private volatile Rectangle viewportBounds = null;
 
     private CacheViewerSearchBar searchBar;
-    private boolean searchActive = false;
-    private final StringBuilder searchBuffer = new StringBuilder();
+
+    private CacheViewerDumper dumper;
+    private CacheViewerAtlasExporter atlasExporter;
+
+    // Shared by the background jobs for cpu heavy work
+    private ExecutorService workerPool;
+
+    // Filled on the client thread, cancelled and cleared from shutDown
+    private final Map<CacheViewerDuplicateFinder.Kind, CacheViewerDuplicateFinder> duplicateFinders =
+            new ConcurrentHashMap<>();
+    private final Map<CacheViewerDefinitionType, CacheViewerParamIndex> paramIndexes = new ConcurrentHashMap<>();
+
+    // Non null while ::cachetrace is recording
+    private volatile CacheViewerInputTrace inputTrace;
+
+    private CacheViewerThumbnailStore thumbnailStore;
+    private CacheViewerThumbnailStrip thumbnailStrip;
+    private CacheViewerIconGallery iconGallery;
+
+    @Provides
+    CacheViewerConfig provideConfig(ConfigManager configManager)
+    {
+        return configManager.getConfig(CacheViewerConfig.class);
+    }
 
     @Subscribe
     public void onCommandExecuted(CommandExecuted event) // We should open via a command instead
     {
+        if (event.getCommand().equalsIgnoreCase("cachedump"))
+        {
+            startDump(event.getArguments());
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cacheatlas"))
+        {
+            startAtlasExport(event.getArguments());
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cachefind"))
+        {
+            findByParams(event.getArguments());
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cachedupes"))
+        {
+            findDuplicates(event.getArguments());
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cachetrace"))
+        {
+            toggleInputTrace(event.getArguments());
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cachestats"))
+        {
+            sendChatMessage(String.format("Thumbnails: %d/%d, hits %d, misses %d, evictions %d",
+                    thumbnailStore.getSize(), thumbnailStore.getCapacity(),
+                    thumbnailStore.getHits(), thumbnailStore.getMisses(), thumbnailStore.getEvictions()));
+            return;
+        }
+
+        if (event.getCommand().equalsIgnoreCase("cacheicons")) // ::cacheicons <quantity> [border]
+        {
+            String[] args = event.getArguments();
+            int quantity = args.length > 0 ? parseSafe(args[0], 1) : 1;
+            int border = args.length > 1 ? parseSafe(args[1], 1) : 1;
+
+            clientThread.invokeLater(() ->
+            {
+                iconGallery.setStyle(quantity, border);
+                updateViewport();
+            });
+            return;
+        }
+
         if (!event.getCommand().equalsIgnoreCase("cache"))
         {
             return;
@@ -86,52 +183,555 @@ public class CacheViewerPlugin extends Plugin
             openInterface();
         });
     }
+
+    private void startDump(String[] args) // ::cachedump <items|npcs> [csv|jsonl]
+    {
+        if (args.length > 0 && args[0].equalsIgnoreCase("stop"))
+        {
+            if (dumper != null && dumper.isRunning())
+            {
+                dumper.cancel();
+            }
+            return;
+        }
+
+        CacheViewerDefinitionType type = args.length > 0 ? CacheViewerDefinitionType.fromName(args[0]) : null;
+        CacheViewerDumper.Format format = args.length > 1
+                ? CacheViewerDumper.Format.fromName(args[1])
+                : CacheViewerDumper.Format.CSV;
+
+        if (type == null || format == null)
+        {
+            sendChatMessage("Usage: ::cachedump <items|npcs> [csv|jsonl]");
+            return;
+        }
+
+        if (dumper != null && dumper.isRunning())
+        {
+            sendChatMessage("A dump is already running, use ::cachedump stop to cancel it.");
+            return;
+        }
+
+        dumper = new CacheViewerDumper(client, clientThread, type, format, OUTPUT_DIR, this::sendChatMessage);
+        clientThread.invokeLater(dumper::start);
+    }
+
+    private void startAtlasExport(String[] args) // ::cacheatlas <first sprite> <last sprite>
+    {
+        if (args.length > 0 && args[0].equalsIgnoreCase("stop"))
+        {
+            if (atlasExporter != null && atlasExporter.isRunning())
+            {
+                atlasExporter.cancel();
+            }
+            return;
+        }
+
+        int first = args.length > 1 ? parseSafe(args[0], -1) : -1;
+        int last = args.length > 1 ? parseSafe(args[1], -1) : -1;
+
+        if (first < 0 || last < first)
+        {
+            sendChatMessage("Usage: ::cacheatlas <first sprite> <last sprite>");
+            return;
+        }
+
+        if (atlasExporter != null && atlasExporter.isRunning())
+        {
+            sendChatMessage("An atlas export is already running, use ::cacheatlas stop to cancel it.");
+            return;
+        }
+
+        atlasExporter = new CacheViewerAtlasExporter(client, clientThread, workerPool, first, last,
+                OUTPUT_DIR, this::sendChatMessage);
+        clientThread.invokeLater(atlasExporter::start);
+    }
+
+    private void findByParams(String[] args) // ::cachefind <items|npcs> <param>=<value>... or clear
+    {
+        CacheViewerDefinitionType type = args.length > 1 ? CacheViewerDefinitionType.fromName(args[0]) : null;
+        if (type == null)
+        {
+            sendChatMessage("Usage: ::cachefind <items|npcs> <param>=<value> [<param>=<value>...] or clear");
+            return;
+        }
+
+        String category = type == CacheViewerDefinitionType.ITEMS ? CATEGORY_ITEMS : CATEGORY_NPCS;
+
+        if (args[1].equalsIgnoreCase("clear"))
+        {
+            clearResults(category);
+            return;
+        }
+
+        int[] params = new int[args.length - 1];
+        int[] values = new int[args.length - 1];
+
+        for (int i = 1; i < args.length; i++)
+        {
+            String[] pair = args[i].split("=", 2);
+
+            // Any int is a valid value, so a typo has to be caught here rather than fall back to a default
+            try
+            {
+                params[i - 1] = pair.length == 2 ? Integer.parseInt(pair[0]) : -1;
+                values[i - 1] = pair.length == 2 ? Integer.parseInt(pair[1]) : 0;
+            }
+            catch (NumberFormatException e)
+            {
+                params[i - 1] = -1;
+            }
+
+            if (params[i - 1] < 0)
+            {
+                sendChatMessage("Invalid param filter '" + args[i] + "', expected <param>=<value>.");
+                return;
+            }
+        }
+
+        CacheViewerParamIndex index = paramIndexes.computeIfAbsent(type, CacheViewerParamIndex::new);
+
+        if (index.isReady())
+        {
+            workerPool.execute(() -> showResults(index, category, params, values));
+            return;
+        }
+
+        if (index.isBuilding())
+        {
+            sendChatMessage("Still indexing " + type.getName() + " params, try again shortly.");
+            return;
+        }
+
+        sendChatMessage("Indexing " + type.getName() + " params...");
+        clientThread.invokeLater(() -> index.build(client, clientThread, workerPool, error ->
+        {
+            if (error != null)
+            {
+                sendChatMessage(error);
+                return;
+            }
+
+            showResults(index, category, params, values);
+        }));
+    }
+
+    private void showResults(CacheViewerParamIndex index, String category, int[] params, int[] values)
+    {
+        int[] ids = index.find(params, values);
+
+        if (ids.length == 0)
+        {
+            sendChatMessage("No " + index.getType().getName() + " match those params.");
+            return;
+        }
+
+        sendChatMessage("Found " + ids.length + " " + index.getType().getName()
+                + ", use the arrow keys to step through them (index: " + index.getPostingCount() + " lists, "
+                + index.getCompressedBytes() / 1024 + "KB).");
+
+        browseResults(category, ids);
+    }
+
+    private void findDuplicates(String[] args) // ::cachedupes <models|sprites> [last id] or clear, ::cachedupes stop
+    {
+        if (args.length > 0 && args[0].equalsIgnoreCase("stop"))
+        {
+            duplicateFinders.values().forEach(CacheViewerDuplicateFinder::cancel);
+            return;
+        }
+
+        CacheViewerDuplicateFinder.Kind kind = args.length > 0 ? CacheViewerDuplicateFinder.Kind.fromName(args[0]) : null;
+        if (kind == null)
+        {
+            sendChatMessage("Usage: ::cachedupes <models|sprites> [last id], ::cachedupes <models|sprites> clear or ::cachedupes stop");
+            return;
+        }
+
+        String category = kind == CacheViewerDuplicateFinder.Kind.MODELS ? CATEGORY_MODELS : CATEGORY_SPRITES;
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("clear"))
+        {
+            clearResults(category);
+            return;
+        }
+
+        int requested = args.length > 1 ? parseSafe(args[1], -1) : Integer.MAX_VALUE;
+        if (requested < 0)
+        {
+            sendChatMessage("Invalid last id '" + args[1] + "'.");
+            return;
+        }
+
+        clientThread.invokeLater(() ->
+        {
+            int archiveLastId = kind.getLastId(client);
+            if (archiveLastId < 0)
+            {
+                sendChatMessage("Unable to scan " + kind.getName() + ", the archive isn't loaded.");
+                return;
+            }
+
+            int lastId = Math.min(requested, archiveLastId);
+
+            CacheViewerDuplicateFinder existing = duplicateFinders.get(kind);
+            if (existing != null && existing.isRunning())
+            {
+                sendChatMessage("Still scanning " + kind.getName() + " for duplicates, use ::cachedupes stop to cancel it.");
+                return;
+            }
+
+            if (existing != null && existing.isReady() && existing.getLastId() == lastId)
+            {
+                workerPool.execute(() -> showDuplicates(existing, category));
+                return;
+            }
+
+            sendChatMessage("Scanning " + kind.getName() + " 0 - " + lastId + " for duplicates...");
+
+            CacheViewerDuplicateFinder finder = new CacheViewerDuplicateFinder(client, clientThread, workerPool,
+                    kind, lastId, OUTPUT_DIR);
+            duplicateFinders.put(kind, finder);
+
+            finder.start(error ->
+            {
+                if (error != null)
+                {
+                    sendChatMessage(error);
+                    return;
+                }
+
+                int changed = finder.getChangedCount();
+                sendChatMessage("Scanned " + kind.getName() + " in " + finder.getElapsedMillis() + "ms"
+                        + (changed >= 0 ? ", " + changed + " changed since the last scan." : "."));
+                showDuplicates(finder, category);
+            });
+        });
+    }
+
+    private void showDuplicates(CacheViewerDuplicateFinder finder, String category)
+    {
+        int[] ids = finder.getDuplicateIds();
+
+        if (ids.length == 0)
+        {
+            sendChatMessage("No duplicate " + finder.getKind().getName() + " found.");
+            return;
+        }
+
+        sendChatMessage("Found " + ids.length + " " + finder.getKind().getName() + " in " + finder.getClusterCount()
+                + " duplicate groups, use the arrow keys to step through them.");
+
+        browseResults(category, ids);
+    }
+
+    /**
+     * Filters a category down to the given sorted ids and jumps to the first one.
+     */
+    void browseResults(String category, int[] ids)
+    {
+        record(trace -> trace.results(category, ids));
+
+        CacheViewerViewState state = updateState(s -> s
+                .withResults(category, ids)
+                .withCategory(category)
+                .withCurrentIndex(ids[0]));
+
+        searchBar.setCategoryLabel(category);
+        searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
+
+        clientThread.invokeLater(() ->
+        {
+            buildCategoryTabs();
+            updateViewport();
+            updateInfoText();
+        });
+    }
+
+    void clearResults(String category)
+    {
+        record(trace -> trace.results(category, null));
+
+        updateState(s -> s.withResults(category, null));
+        clientThread.invokeLater(this::updateInfoText);
+    }
+
+    private void toggleInputTrace(String[] args) // ::cachetrace <start|stop>
+    {
+        if (args.length > 0 && args[0].equalsIgnoreCase("start"))
+        {
+            inputTrace = new CacheViewerInputTrace();
+            sendChatMessage("Recording viewer input, ::cachetrace stop to save it.");
+            return;
+        }
+
+        CacheViewerInputTrace trace = inputTrace;
+        if (trace == null || args.length == 0 || !args[0].equalsIgnoreCase("stop"))
+        {
+            sendChatMessage("Usage: ::cachetrace <start|stop>");
+            return;
+        }
+
+        inputTrace = null;
+
+        File file = new File(new File(OUTPUT_DIR, "traces"), "trace-" + System.currentTimeMillis() + ".cvt");
+        workerPool.execute(() ->
+        {
+            try
+            {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), trace.toByteArray());
+                sendChatMessage("Saved " + trace.getCount() + " input events to " + file.getName() + ".");
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to save input trace {}", file, e);
+                sendChatMessage("Failed to save input trace: " + e.getMessage());
+            }
+        });
+    }
+
+    private void sendChatMessage(String message)
+    {
+        clientThread.invokeLater(() ->
+                client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", message, null));
+    }
+
     @Subscribe
-    public void onClientTick(ClientTick tick) // Check if open
+    public void onConfigChanged(ConfigChanged event)
+    {
+        if (!CacheViewerConfig.GROUP.equals(event.getGroup())
+                || !"thumbnailCacheSize".equals(event.getKey()))
+        {
+            return;
+        }
+
+        clientThread.invokeLater(() ->
+        {
+            if (thumbnailStore == null)
+            {
+                return;
+            }
+
+            thumbnailStore.resize(config.thumbnailCacheSize());
+            thumbnailStrip.invalidate();
+            iconGallery.invalidate();
+        });
+    }
+
+    // Only registered on the event bus while the viewer is open, a closed viewer costs nothing per frame
+    private final Object ticker = new Object()
+    {
+        @Subscribe
+        public void onClientTick(ClientTick tick)
+        {
+            CacheViewerPlugin.this.onClientTick(tick);
+        }
+    };
+
+    void onClientTick(ClientTick tick) // Check if still open
     {
         Widget root = client.getWidget(INTERFACE_GROUP_ID, 0);
-        cacheViewerVisible = root != null && !root.isHidden();
+        if (root == null || root.isHidden())
+        {
+            setActive(false);
+        }
+    }
 
+    @Subscribe
+    public void onWidgetLoaded(WidgetLoaded event)
+    {
+        // Fires inside openInterface before the viewer is marked open, and before it has been drawn
+        if (event.getGroupId() == INTERFACE_GROUP_ID)
+        {
+            clientThread.invokeLater(this::updateViewportBounds);
+        }
+    }
+
+    @Subscribe
+    public void onWidgetClosed(WidgetClosed event)
+    {
+        if (event.getGroupId() == INTERFACE_GROUP_ID)
+        {
+            setActive(false);
+        }
+    }
+
+    @Subscribe
+    public void onCanvasSizeChanged(CanvasSizeChanged event)
+    {
+        relayoutViewportBounds();
+    }
+
+    @Subscribe
+    public void onResizeableChanged(ResizeableChanged event)
+    {
+        relayoutViewportBounds();
+    }
+
+    private void relayoutViewportBounds()
+    {
+        if (!cacheViewerOpen)
+        {
+            return;
+        }
+
+        // The client lays widgets out again before the next tick, read the bounds after that
+        clientThread.invokeLater(this::updateViewportBounds);
+    }
+
+    private void updateViewportBounds()
+    {
         Widget template = client.getWidget(4, 4);
         viewportBounds = template != null ? template.getBounds() : null;
     }
 
+    /**
+     * Registers the tick and input listeners while the viewer is showing, and drops them once it closes.
+     */
+    private void setActive(boolean active)
+    {
+        if (active == cacheViewerOpen)
+        {
+            return;
+        }
+
+        cacheViewerOpen = active;
+        cacheViewerVisible = active;
+
+        if (active)
+        {
+            eventBus.register(ticker);
+            keyManager.registerKeyListener(this);
+            mouseManager.registerMouseListener(this);
+            mouseManager.registerMouseWheelListener(this);
+        }
+        else
+        {
+            eventBus.unregister(ticker);
+            keyManager.unregisterKeyListener(this);
+            mouseManager.unregisterMouseListener(this);
+            mouseManager.unregisterMouseWheelListener(this);
+            viewportBounds = null;
+
+            // The release of a drag in progress won't reach us anymore
+            updateState(s -> s.withDragging(false).withSearch(false, ""));
+        }
+    }
+
+    boolean isActive()
+    {
+        return cacheViewerOpen;
+    }
+
+    CacheViewerViewState getViewState()
+    {
+        return viewState.get();
+    }
+
 
     @Override
     protected void startUp()
     {
-        categoryIndex.put(CATEGORY_SPRITES, 0);
-        categoryIndex.put(CATEGORY_MODELS, 0);
-        categoryIndex.put(CATEGORY_NPCS, 0);
-        categoryIndex.put(CATEGORY_CHATHEADS, 0);
-        categoryIndex.put(CATEGORY_ITEMS, 0);
+        viewState.set(CacheViewerViewState.initial(CATEGORY_SPRITES, DEFAULT_ZOOM));
+
+        workerPool = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new ThreadFactoryBuilder().setNameFormat("cacheviewer-worker-%d").setDaemon(true).build());
 
         searchBar = new CacheViewerSearchBar(client, clientThread, 4, 2);
         searchBar.setOnActivate(this::activateSearch);
+
+        thumbnailStore = new CacheViewerThumbnailStore(config.thumbnailCacheSize());
+        thumbnailStrip = new CacheViewerThumbnailStrip(client, clientThread, thumbnailStore);
+
+        iconGallery = new CacheViewerIconGallery(client, clientThread, thumbnailStore);
+        iconGallery.setOnSelect(this::showItem);
     }
 
-    private void activateSearch()
+    void activateSearch()
     {
-        searchActive = true;
-        searchBuffer.setLength(0);
+        record(CacheViewerInputTrace::search);
+
+        updateState(s -> s.withSearch(true, ""));
         searchBar.updateValue("");
     }
 
-    private void shutDownPlugin()
+    /**
+     * Adds an event to the input trace while one is recording.
+     */
+    private void record(Consumer<CacheViewerInputTrace> event)
+    {
+        CacheViewerInputTrace trace = inputTrace;
+        if (trace != null)
+        {
+            event.accept(trace);
+        }
+    }
+
+    /**
+     * Compare-and-set loop, the update may run more than once if another thread got in first.
+     */
+    private CacheViewerViewState updateState(UnaryOperator<CacheViewerViewState> update)
     {
-        cacheViewerOpen = false;
-        dragging = false;
-        searchActive = false;
+        while (true)
+        {
+            CacheViewerViewState prev = viewState.get();
+            CacheViewerViewState next = update.apply(prev);
+
+            if (viewState.compareAndSet(prev, next))
+            {
+                return next;
+            }
+        }
+    }
 
-        keyManager.unregisterKeyListener(this);
-        mouseManager.unregisterMouseListener(this);
-        mouseManager.unregisterMouseWheelListener(this);
+    private void shutDownPlugin()
+    {
+        setActive(false);
     }
 
     @Override
     protected void shutDown()
     {
         shutDownPlugin();
+
+        if (dumper != null)
+        {
+            dumper.cancel();
+            dumper = null;
+        }
+
+        if (atlasExporter != null)
+        {
+            atlasExporter.cancel();
+            atlasExporter = null;
+        }
+
+        paramIndexes.values().forEach(CacheViewerParamIndex::cancel);
+        paramIndexes.clear();
+
+        duplicateFinders.values().forEach(CacheViewerDuplicateFinder::cancel);
+        duplicateFinders.clear();
+
+        workerPool.shutdownNow();
+
+        CacheViewerThumbnailStore store = thumbnailStore;
+        CacheViewerThumbnailStrip strip = thumbnailStrip;
+        CacheViewerIconGallery gallery = iconGallery;
+        clientThread.invokeLater(() ->
+        {
+            strip.clear();
+            gallery.clear();
+
+            // Let the store's direct buffer go while disabled, unless startUp already replaced it
+            if (thumbnailStore == store)
+            {
+                thumbnailStore = null;
+                thumbnailStrip = null;
+                iconGallery = null;
+            }
+        });
     }
 
 
@@ -145,14 +745,13 @@ public class CacheViewerPlugin extends Plugin
             if (root != null)
             {
                 root.setHidden(false);
-                cacheViewerOpen = true;
-
-                keyManager.registerKeyListener(this);
-                mouseManager.registerMouseListener(this);
-                mouseManager.registerMouseWheelListener(this);
+                setActive(true);
 
                 setupUI();
                 searchBar.build();
+
+                // Bounds come from the last render, read them once the viewer has been drawn
+                clientThread.invokeLater(this::updateViewportBounds);
                 return;
             }
 
@@ -170,14 +769,13 @@ public class CacheViewerPlugin extends Plugin
                 return;
             }
 
-            cacheViewerOpen = true;
-
-            keyManager.registerKeyListener(this);
-            mouseManager.registerMouseListener(this);
-            mouseManager.registerMouseWheelListener(this);
+            setActive(true);
 
             setupUI();
             searchBar.build();
+
+            // Bounds come from the last render, read them once the viewer has been drawn
+            clientThread.invokeLater(this::updateViewportBounds);
         });
     }
 
@@ -216,21 +814,24 @@ public class CacheViewerPlugin extends Plugin
 
         container.deleteAllChildren();
 
-        addCategoryTab(container, CATEGORY_SPRITES, "Sprites", 30);
-        addCategoryTab(container, CATEGORY_MODELS,  "Models",  58);
-        addCategoryTab(container, CATEGORY_NPCS,    "NPCs",    86);
-        addCategoryTab(container, CATEGORY_CHATHEADS,   "Chatheads", 114);
-        addCategoryTab(container, CATEGORY_ITEMS,   "Items", 142);
+        String selected = viewState.get().getCategory();
+
+        addCategoryTab(container, selected, CATEGORY_SPRITES, "Sprites", 30);
+        addCategoryTab(container, selected, CATEGORY_MODELS,  "Models",  58);
+        addCategoryTab(container, selected, CATEGORY_NPCS,    "NPCs",    86);
+        addCategoryTab(container, selected, CATEGORY_CHATHEADS,   "Chatheads", 114);
+        addCategoryTab(container, selected, CATEGORY_ITEMS,   "Items", 142);
+        addCategoryTab(container, selected, CATEGORY_ICONS,   "Item Icons", 170);
 
         container.revalidate();
     }
 
-    private void addCategoryTab(Widget parent, String id, String label, int y) // Tabs, should maybe have sprites for nicer UX
+    private void addCategoryTab(Widget parent, String selected, String id, String label, int y) // Tabs, should maybe have sprites for nicer UX
     {
         Widget tab = parent.createChild(-1, WidgetType.TEXT);
 
         tab.setText(label);
-        tab.setName(id.equals(selectedCategory)
+        tab.setName(id.equals(selected)
                 ? "<col=ff9040>" + label + "</col>"
                 : label);
 
@@ -257,16 +858,31 @@ public class CacheViewerPlugin extends Plugin
         tab.revalidate();
     }
 
-    private void switchCategory(String category)
+    void switchCategory(String category)
     {
-        selectedCategory = category;
-        dragging = false;
+        record(trace -> trace.category(category));
 
-        searchActive = false;
-        searchBuffer.setLength(0);
+        CacheViewerViewState state = updateState(s -> s.withCategory(category));
 
         searchBar.setCategoryLabel(category);
-        searchBar.updateValue(String.valueOf(getCurrentIndex()));
+        searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
+
+        clientThread.invokeLater(() ->
+        {
+            buildCategoryTabs();
+            updateViewport();
+            updateInfoText();
+        });
+    }
+
+    void showItem(int itemId) // Clicked from the icon gallery
+    {
+        record(trace -> trace.showItem(itemId));
+
+        CacheViewerViewState state = updateState(s -> s.withCategory(CATEGORY_ITEMS).withCurrentIndex(itemId));
+
+        searchBar.setCategoryLabel(CATEGORY_ITEMS);
+        searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
 
         clientThread.invokeLater(() ->
         {
@@ -281,7 +897,7 @@ public class CacheViewerPlugin extends Plugin
     private void updateViewport()
     {
         Widget template = client.getWidget(4, 4);
-        if (template == null)
+        if (template == null || thumbnailStore == null)
         {
             return;
         }
@@ -294,10 +910,39 @@ public class CacheViewerPlugin extends Plugin
 
         clearNpcWidgets(parent);
 
-        int index = getCurrentIndex();
+        // One snapshot for the whole update so category, index and rotation always agree
+        CacheViewerViewState state = viewState.get();
+        int index = state.getCurrentIndex();
+
+        thumbnailStrip.update(parent,
+                state.isCategory(CATEGORY_SPRITES),
+                state.isCategory(CATEGORY_ITEMS),
+                index);
+
+        // ITEM ICONS (index is the page)
+        if (state.isCategory(CATEGORY_ICONS))
+        {
+            int lastPage = iconGallery.getLastPage();
+            if (index > lastPage)
+            {
+                // Arrows and search don't know the item count, pull them back to the last page
+                CacheViewerViewState clamped = updateState(s -> s.isCategory(CATEGORY_ICONS) && s.getCurrentIndex() > lastPage
+                        ? s.withCurrentIndex(lastPage)
+                        : s);
+                searchBar.updateValue(String.valueOf(clamped.getCurrentIndex()));
+                index = lastPage;
+            }
+
+            template.setHidden(true);
+            iconGallery.show(parent, index);
+            parent.revalidate();
+            return;
+        }
+
+        iconGallery.hide();
 
         // SPRITES
-        if (CATEGORY_SPRITES.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_SPRITES))
         {
             template.setHidden(false);
             template.setType(WidgetType.GRAPHIC);
@@ -307,41 +952,41 @@ public class CacheViewerPlugin extends Plugin
         }
 
         // MODELS
-        if (CATEGORY_MODELS.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_MODELS))
         {
             template.setHidden(false);
             template.setType(WidgetType.MODEL);
             template.setModelType(WidgetModelType.MODEL);
             template.setModelId(index);
-            applyModelSettings(template);
+            applyModelSettings(template, state);
             return;
         }
 
         // ITEMS
-        if (CATEGORY_ITEMS.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_ITEMS))
         {
             template.setHidden(false);
             template.setType(WidgetType.MODEL);
             template.setModelType(WidgetModelType.ITEM);
             template.setModelId(index);
-            applyModelSettings(template);
+            applyModelSettings(template, state);
             return;
         }
 
         // CHATHEADS
-        if (CATEGORY_CHATHEADS.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_CHATHEADS))
         {
             template.setHidden(false);
             template.setType(WidgetType.MODEL);
             template.setModelType(WidgetModelType.NPC_CHATHEAD);
             template.setModelId(index);
-            applyModelSettings(template);
+            applyModelSettings(template, state);
             template.revalidate();
             return;
         }
 
         // NPCs (multi-widget causes overlap issues, but fixing would be effort)
-        if (CATEGORY_NPCS.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_NPCS))
         {
             template.setHidden(true);
 
@@ -370,7 +1015,7 @@ public class CacheViewerPlugin extends Plugin
                 w.setModelType(WidgetModelType.MODEL);
                 w.setModelId(modelId);
 
-                applyModelSettings(w);
+                applyModelSettings(w, state);
 
                 w.setHidden(false);
                 w.revalidate();
@@ -389,17 +1034,18 @@ public class CacheViewerPlugin extends Plugin
     private void updateInfoText()
     {
         Widget info = client.getWidget(4, 13);
-        if (info == null)
+        if (info == null || thumbnailStore == null)
         {
             return;
         }
 
-        int index = getCurrentIndex();
+        CacheViewerViewState state = viewState.get();
+        int index = state.getCurrentIndex();
 
         // Default text when no metadata is present
         String text = "Select a category:";
 
-        if (CATEGORY_ITEMS.equals(selectedCategory))
+        if (state.isCategory(CATEGORY_ITEMS))
         {
             ItemComposition item = client.getItemDefinition(index);
             if (item != null && item.getName() != null)
@@ -407,8 +1053,15 @@ public class CacheViewerPlugin extends Plugin
                 text = item.getName().replace(" (Members)", ""); // For the f2p newbies
             }
         }
-        else if (CATEGORY_NPCS.equals(selectedCategory)
-                || CATEGORY_CHATHEADS.equals(selectedCategory))
+        else if (state.isCategory(CATEGORY_ICONS))
+        {
+            int page = Math.min(index, iconGallery.getLastPage());
+            int first = CacheViewerIconGallery.getFirstItem(page);
+            int last = Math.min(first + CacheViewerIconGallery.PAGE_SIZE, iconGallery.getItemCount()) - 1;
+            text = last >= first ? "Items " + first + " - " + last : "No items loaded";
+        }
+        else if (state.isCategory(CATEGORY_NPCS)
+                || state.isCategory(CATEGORY_CHATHEADS))
         {
             NPCComposition npc = client.getNpcDefinition(index);
             if (npc != null && npc.getName() != null)
@@ -416,6 +1069,29 @@ public class CacheViewerPlugin extends Plugin
                 text = npc.getName();
             }
         }
+        else if (state.isCategory(CATEGORY_MODELS)
+                || state.isCategory(CATEGORY_SPRITES))
+        {
+            CacheViewerDuplicateFinder finder = duplicateFinders.get(state.isCategory(CATEGORY_MODELS)
+                    ? CacheViewerDuplicateFinder.Kind.MODELS
+                    : CacheViewerDuplicateFinder.Kind.SPRITES);
+
+            int[] cluster = finder != null ? finder.getCluster(index) : null;
+            if (cluster != null)
+            {
+                text = "Same as " + describeCluster(cluster, index);
+            }
+        }
+
+        // Position within the ::cachefind results
+        int[] results = state.getResults();
+        if (results != null)
+        {
+            int pos = Arrays.binarySearch(results, index);
+            text += pos >= 0
+                    ? " (" + (pos + 1) + "/" + results.length + ")"
+                    : " (" + results.length + " results)";
+        }
 
         info.setText(text);
         info.revalidate();
@@ -423,11 +1099,41 @@ public class CacheViewerPlugin extends Plugin
 
 
 
-    private void applyModelSettings(Widget w)
+    private static String describeCluster(int[] cluster, int id)
     {
-        w.setModelZoom(modelZoom);
-        w.setRotationX(rotX);
-        w.setRotationZ(rotZ);
+        StringBuilder sb = new StringBuilder();
+        int shown = 0;
+
+        for (int other : cluster)
+        {
+            if (other == id)
+            {
+                continue;
+            }
+
+            if (shown == 4)
+            {
+                sb.append(" +").append(cluster.length - 1 - shown).append(" more");
+                break;
+            }
+
+            if (shown > 0)
+            {
+                sb.append(", ");
+            }
+
+            sb.append(other);
+            shown++;
+        }
+
+        return sb.toString();
+    }
+
+    private void applyModelSettings(Widget w, CacheViewerViewState state)
+    {
+        w.setModelZoom(state.getZoom());
+        w.setRotationX(state.getRotX());
+        w.setRotationZ(state.getRotZ());
         w.revalidate();
     }
 
@@ -456,6 +1162,8 @@ public class CacheViewerPlugin extends Plugin
     @Override
     public MouseEvent mousePressed(MouseEvent e)
     {
+        record(trace -> trace.mousePressed(e));
+
         if (!cacheViewerVisible || viewportBounds == null)
         {
             return e;
@@ -466,7 +1174,13 @@ public class CacheViewerPlugin extends Plugin
             return e;
         }
 
-        dragging = true;
+        // The icon grid covers the viewport, its cells need the press to be clicked
+        if (viewState.get().isCategory(CATEGORY_ICONS))
+        {
+            return e;
+        }
+
+        updateState(s -> s.withDragging(true));
         lastMouseX = e.getX();
         lastMouseY = e.getY();
         e.consume();
@@ -477,14 +1191,22 @@ public class CacheViewerPlugin extends Plugin
     @Override
     public MouseEvent mouseReleased(MouseEvent e)
     {
-        dragging = false;
+        record(trace -> trace.mouseReleased(e));
+
+        if (viewState.get().isDragging())
+        {
+            updateState(s -> s.withDragging(false));
+        }
+
         return e;
     }
 
     @Override
     public MouseEvent mouseDragged(MouseEvent e)
     {
-        if (!cacheViewerVisible || !dragging)
+        record(trace -> trace.mouseDragged(e));
+
+        if (!cacheViewerVisible || !viewState.get().isDragging())
         {
             return e;
         }
@@ -495,8 +1217,7 @@ public class CacheViewerPlugin extends Plugin
         lastMouseX = e.getX();
         lastMouseY = e.getY();
 
-        rotZ = wrap(rotZ - dx * 4);
-        rotX = wrap(rotX + dy * 4);
+        updateState(s -> s.withRotation(wrap(s.getRotX() + dy * 4), wrap(s.getRotZ() - dx * 4)));
 
         clientThread.invokeLater(this::updateViewport);
         e.consume();
@@ -507,13 +1228,15 @@ public class CacheViewerPlugin extends Plugin
     @Override
     public MouseWheelEvent mouseWheelMoved(MouseWheelEvent e)
     {
+        record(trace -> trace.mouseWheelMoved(e));
+
         if (!cacheViewerVisible)
         {
             return e;
         }
 
-        modelZoom += e.getWheelRotation() * 50;
-        modelZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, modelZoom));
+        int delta = e.getWheelRotation() * 50;
+        updateState(s -> s.withZoom(Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, s.getZoom() + delta))));
 
         clientThread.invokeLater(this::updateViewport);
         e.consume();
@@ -524,7 +1247,9 @@ public class CacheViewerPlugin extends Plugin
     @Override
     public void keyTyped(KeyEvent e)
     {
-        if (cacheViewerVisible && searchActive)
+        record(trace -> trace.keyTyped(e));
+
+        if (cacheViewerVisible && viewState.get().isSearchActive())
         {
             e.consume();
         }
@@ -534,12 +1259,14 @@ public class CacheViewerPlugin extends Plugin
     @Override
     public void keyPressed(KeyEvent e)
     {
+        record(trace -> trace.keyPressed(e));
+
         if (!cacheViewerVisible)
         {
             return;
         }
 
-        if (searchActive)
+        if (viewState.get().isSearchActive())
         {
             handleSearchInput(e);
             e.consume();
@@ -550,11 +1277,10 @@ public class CacheViewerPlugin extends Plugin
 
         if (code == KeyEvent.VK_LEFT || code == KeyEvent.VK_RIGHT)
         {
-            int index = getCurrentIndex();
-            index += (code == KeyEvent.VK_LEFT ? -1 : 1);
-            setCurrentIndex(index);
+            int step = code == KeyEvent.VK_LEFT ? -1 : 1;
+            CacheViewerViewState state = updateState(s -> s.withCurrentIndex(s.stepIndex(step)));
 
-            searchBar.updateValue(String.valueOf(getCurrentIndex()));
+            searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
 
             clientThread.invokeLater(() ->
             {
@@ -577,49 +1303,56 @@ public class CacheViewerPlugin extends Plugin
 
         char c = e.getKeyChar();
 
-        if (Character.isDigit(c))
+        if (e.getKeyCode() == KeyEvent.VK_ENTER)
         {
-            searchBuffer.append(c);
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE && searchBuffer.length() > 0)
-        {
-            searchBuffer.deleteCharAt(searchBuffer.length() - 1);
-        }
+            // Parse inside the update, the search may have been reset since the key was pressed
+            CacheViewerViewState state = updateState(s -> s.getSearch().isEmpty()
+                    ? s.withSearch(false, "")
+                    : s.withCurrentIndex(parseSafe(s.getSearch(), s.getCurrentIndex())).withSearch(false, ""));
 
+            searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
 
-        else if (e.getKeyCode() == KeyEvent.VK_ENTER)
-        {
-            if (searchBuffer.length() > 0)
+            clientThread.invokeLater(() ->
             {
-                int value = parseSafe(searchBuffer.toString(), getCurrentIndex());
-                setCurrentIndex(value);
+                updateViewport();
+                updateInfoText();
+            });
 
-                searchBar.updateValue(String.valueOf(value));
+            e.consume();
+            return;
+        }
 
-                clientThread.invokeLater(() ->
-                {
-                    updateViewport();
-                    updateInfoText();
-                });
-            }
+        if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
+        {
+            CacheViewerViewState state = updateState(s -> s.isSearchActive() ? s.withSearch(false, "") : s);
 
-            searchActive = false;
-            searchBuffer.setLength(0);
+            searchBar.updateValue(String.valueOf(state.getCurrentIndex()));
             e.consume();
             return;
         }
 
-        else if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
+        UnaryOperator<String> edit;
+        if (Character.isDigit(c))
+        {
+            edit = search -> search + c;
+        }
+        else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE)
+        {
+            edit = search -> search.isEmpty() ? search : search.substring(0, search.length() - 1);
+        }
+        else
         {
-            searchActive = false;
-            searchBuffer.setLength(0);
-
-            searchBar.updateValue(String.valueOf(getCurrentIndex()));
             e.consume();
             return;
         }
 
-        searchBar.updateValue(searchBuffer.toString());
+        // Applied to whatever search is current, so a reset from activateSearch is never overwritten
+        CacheViewerViewState state = updateState(s -> s.isSearchActive() ? s.withSearch(true, edit.apply(s.getSearch())) : s);
+
+        if (state.isSearchActive())
+        {
+            searchBar.updateValue(state.getSearch());
+        }
         e.consume();
     }
 
@@ -641,16 +1374,6 @@ public class CacheViewerPlugin extends Plugin
 
     }
 
-    private int getCurrentIndex()
-    {
-        return categoryIndex.getOrDefault(selectedCategory, 0);
-    }
-
-    private void setCurrentIndex(int index)
-    {
-        categoryIndex.put(selectedCategory, Math.max(0, index));
-    }
-
     private static int wrap(int a)
     {
         a %= 2048;
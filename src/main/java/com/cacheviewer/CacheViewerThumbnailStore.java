@@ -0,0 +1,229 @@
+package com.cacheviewer;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed size thumbnail cache backed by a single direct buffer.
+ * Thumbnails are downsampled to fit MAX_SIZE and stored in fixed size slots,
+ * when full the least recently used slot is reclaimed (CLOCK).
+ * Pixels stay off heap, only a small decoded copy is handed out on get.
+ */
+public class CacheViewerThumbnailStore
+{
+    public static final int MAX_SIZE = 36;
+
+    private static final int SLOT_BYTES = MAX_SIZE * MAX_SIZE * 4;
+
+    private static final long KIND_SPRITE = 1;
+    private static final long KIND_ITEM = 2;
+
+    private ByteBuffer pixels;
+    private int slotCount;
+
+    private long[] slotKeys;
+    private byte[] widths;
+    private byte[] heights;
+    private boolean[] referenced;
+
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private int used = 0;
+    private int hand = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public static final class Thumbnail
+    {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+
+        Thumbnail(int width, int height, int[] pixels)
+        {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        public int getWidth()
+        {
+            return width;
+        }
+
+        public int getHeight()
+        {
+            return height;
+        }
+
+        public int[] getPixels()
+        {
+            return pixels;
+        }
+    }
+
+    public CacheViewerThumbnailStore(int capacityMb)
+    {
+        resize(capacityMb);
+    }
+
+    public static long spriteKey(int spriteId)
+    {
+        return KIND_SPRITE << 60 | (spriteId & 0xFFFFFFL);
+    }
+
+    // kind (4 bits) | border (4 bits) | quantity (32 bits) | item id (24 bits)
+    public static long itemKey(int itemId, int quantity, int border)
+    {
+        return KIND_ITEM << 60
+                | (border & 0xFL) << 56
+                | (quantity & 0xFFFFFFFFL) << 24
+                | (itemId & 0xFFFFFFL);
+    }
+
+    /**
+     * Drops every thumbnail and reallocates the backing buffer.
+     */
+    public synchronized void resize(int capacityMb)
+    {
+        long bytes = (long) Math.max(1, capacityMb) * 1024 * 1024;
+        slotCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE / SLOT_BYTES, bytes / SLOT_BYTES));
+
+        pixels = ByteBuffer.allocateDirect(slotCount * SLOT_BYTES);
+        slotKeys = new long[slotCount];
+        widths = new byte[slotCount];
+        heights = new byte[slotCount];
+        referenced = new boolean[slotCount];
+
+        slots.clear();
+        used = 0;
+        hand = 0;
+    }
+
+    public synchronized Thumbnail get(long key)
+    {
+        Integer slot = slots.get(key);
+        if (slot == null)
+        {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        referenced[slot] = true;
+        return decode(slot);
+    }
+
+    public synchronized boolean contains(long key)
+    {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * Downsamples and stores the pixels, returning the stored thumbnail.
+     */
+    public synchronized Thumbnail put(long key, int[] src, int srcWidth, int srcHeight)
+    {
+        if (src == null || srcWidth <= 0 || srcHeight <= 0)
+        {
+            return null;
+        }
+
+        Integer existing = slots.get(key);
+        int slot = existing != null ? existing : allocateSlot();
+
+        float scale = Math.min(1f, Math.min((float) MAX_SIZE / srcWidth, (float) MAX_SIZE / srcHeight));
+        int width = Math.max(1, Math.round(srcWidth * scale));
+        int height = Math.max(1, Math.round(srcHeight * scale));
+
+        int[] out = new int[width * height];
+        int base = slot * SLOT_BYTES;
+
+        // Nearest neighbour, keeps palette colours and the 0 transparency intact
+        for (int y = 0; y < height; y++)
+        {
+            int sy = y * srcHeight / height;
+            for (int x = 0; x < width; x++)
+            {
+                int sx = x * srcWidth / width;
+                int px = src[sy * srcWidth + sx];
+
+                out[y * width + x] = px;
+                pixels.putInt(base + (y * width + x) * 4, px);
+            }
+        }
+
+        slotKeys[slot] = key;
+        widths[slot] = (byte) width;
+        heights[slot] = (byte) height;
+        // Only a get earns a second chance, so one-off thumbnails go first
+        referenced[slot] = false;
+        slots.put(key, slot);
+
+        return new Thumbnail(width, height, out);
+    }
+
+    private int allocateSlot()
+    {
+        if (used < slotCount)
+        {
+            return used++;
+        }
+
+        // Second chance, clear reference bits until we find a slot that hasn't been used since the last sweep
+        while (referenced[hand])
+        {
+            referenced[hand] = false;
+            hand = (hand + 1) % slotCount;
+        }
+
+        int slot = hand;
+        hand = (hand + 1) % slotCount;
+
+        slots.remove(slotKeys[slot]);
+        evictions++;
+        return slot;
+    }
+
+    private Thumbnail decode(int slot)
+    {
+        int width = widths[slot] & 0xFF;
+        int height = heights[slot] & 0xFF;
+        int base = slot * SLOT_BYTES;
+
+        int[] out = new int[width * height];
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = pixels.getInt(base + i * 4);
+        }
+
+        return new Thumbnail(width, height, out);
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized int getSize()
+    {
+        return slots.size();
+    }
+
+    public synchronized int getCapacity()
+    {
+        return slotCount;
+    }
+}
@@ -0,0 +1,295 @@
+package com.cacheviewer;
+
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.ItemQuantityMode;
+import net.runelite.api.SpritePixels;
+import net.runelite.api.widgets.*;
+import net.runelite.client.callback.ClientThread;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row of thumbnails for the ids around the selected one, shown under the viewport
+ * in the Sprites and Items categories. Thumbnails come from the thumbnail store and
+ * are displayed through sprite overrides, misses are rendered a few per tick.
+ */
+public class CacheViewerThumbnailStrip
+{
+    private static final int SLOTS = 9;
+    private static final int SPACING = CacheViewerThumbnailStore.MAX_SIZE + 4;
+
+    // Sprite override ids, far above anything in the cache
+    private static final int SPRITE_ID_BASE = 0x7F000000;
+
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final CacheViewerThumbnailStore store;
+
+    private final Widget[] widgets = new Widget[SLOTS];
+    private final long[] shownKeys = new long[SLOTS];
+
+    // Slots waiting on the generator, with the id and key they were queued for
+    private final boolean[] pending = new boolean[SLOTS];
+    private final int[] pendingIds = new int[SLOTS];
+    private final long[] pendingKeys = new long[SLOTS];
+    private boolean pendingSprites;
+
+    private boolean visible = false;
+    private boolean generating = false;
+
+    public CacheViewerThumbnailStrip(Client client, ClientThread clientThread, CacheViewerThumbnailStore store)
+    {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.store = store;
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public void update(Widget parent, boolean sprites, boolean items, int index)
+    {
+        if (!sprites && !items)
+        {
+            hide();
+            return;
+        }
+
+        ensureWidgets(parent);
+
+        visible = true;
+        pendingSprites = sprites;
+
+        boolean changed = false;
+        boolean missing = false;
+
+        for (int i = 0; i < SLOTS; i++)
+        {
+            Widget w = widgets[i];
+            int id = index - SLOTS / 2 + i;
+
+            if (id < 0)
+            {
+                w.setHidden(true);
+                shownKeys[i] = 0;
+                pending[i] = false;
+                continue;
+            }
+
+            long key = sprites
+                    ? CacheViewerThumbnailStore.spriteKey(id)
+                    : CacheViewerThumbnailStore.itemKey(id, 1, 1);
+
+            if (shownKeys[i] != key && !(pending[i] && pendingKeys[i] == key))
+            {
+                CacheViewerThumbnailStore.Thumbnail thumb = store.get(key);
+                if (thumb != null)
+                {
+                    setThumbnail(i, key, thumb);
+                    pending[i] = false;
+                }
+                else
+                {
+                    // Rendering is left to the generator, the old thumbnail mustn't linger meanwhile
+                    client.getSpriteOverrides().remove(SPRITE_ID_BASE + i);
+                    shownKeys[i] = 0;
+                    pendingIds[i] = id;
+                    pendingKeys[i] = key;
+                    pending[i] = true;
+                    missing = true;
+                }
+
+                changed = true;
+            }
+
+            w.setHidden(false);
+            w.setOpacity(i == SLOTS / 2 ? 0 : 120);
+            w.revalidate();
+        }
+
+        // Widgets cache decoded sprites by id, so the overrides won't show until this is cleared
+        if (changed)
+        {
+            client.getWidgetSpriteCache().reset();
+        }
+
+        if (missing && !generating)
+        {
+            generating = true;
+            clientThread.invokeLater(this::generate);
+        }
+    }
+
+    public void hide()
+    {
+        visible = false;
+
+        for (Widget w : widgets)
+        {
+            if (w != null)
+            {
+                w.setHidden(true);
+            }
+        }
+    }
+
+    /**
+     * Forces every slot to be fetched again, e.g. after the store was resized.
+     */
+    public void invalidate()
+    {
+        for (int i = 0; i < SLOTS; i++)
+        {
+            shownKeys[i] = 0;
+            pending[i] = false;
+        }
+    }
+
+    /**
+     * Must be called on the client thread.
+     */
+    public void clear()
+    {
+        hide();
+        invalidate();
+
+        for (int i = 0; i < SLOTS; i++)
+        {
+            client.getSpriteOverrides().remove(SPRITE_ID_BASE + i);
+        }
+    }
+
+    private boolean generate()
+    {
+        if (!visible)
+        {
+            generating = false;
+            return true;
+        }
+
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        boolean changed = false;
+        boolean done = true;
+
+        for (int i = 0; i < SLOTS; i++)
+        {
+            if (!pending[i])
+            {
+                continue;
+            }
+
+            if (System.nanoTime() >= deadline)
+            {
+                done = false;
+                break;
+            }
+
+            long key = pendingKeys[i];
+            int id = pendingIds[i];
+            pending[i] = false;
+
+            CacheViewerThumbnailStore.Thumbnail thumb = pendingSprites ? captureSprite(key, id) : captureItem(key, id);
+            if (thumb != null)
+            {
+                setThumbnail(i, key, thumb);
+                changed = true;
+            }
+        }
+
+        if (changed)
+        {
+            client.getWidgetSpriteCache().reset();
+        }
+
+        if (done)
+        {
+            generating = false;
+        }
+
+        return done;
+    }
+
+    private void setThumbnail(int slot, long key, CacheViewerThumbnailStore.Thumbnail thumb)
+    {
+        client.getSpriteOverrides().put(SPRITE_ID_BASE + slot,
+                client.createSpritePixels(thumb.getPixels(), thumb.getWidth(), thumb.getHeight()));
+        shownKeys[slot] = key;
+    }
+
+    private CacheViewerThumbnailStore.Thumbnail captureSprite(long key, int spriteId)
+    {
+        SpritePixels[] sprites = client.getSprites(client.getIndexSprites(), spriteId, 0);
+        if (sprites == null || sprites.length == 0 || sprites[0] == null)
+        {
+            return null;
+        }
+
+        SpritePixels sprite = sprites[0];
+        return store.put(key, sprite.getPixels(), sprite.getWidth(), sprite.getHeight());
+    }
+
+    private CacheViewerThumbnailStore.Thumbnail captureItem(long key, int itemId)
+    {
+        SpritePixels sprite = client.createItemSprite(itemId, 1, 1, SpritePixels.DEFAULT_SHADOW_COLOR,
+                ItemQuantityMode.NEVER, false, Constants.CLIENT_DEFAULT_ZOOM);
+        if (sprite == null)
+        {
+            return null;
+        }
+
+        return store.put(key, sprite.getPixels(), sprite.getWidth(), sprite.getHeight());
+    }
+
+    private void ensureWidgets(Widget parent)
+    {
+        // The interface gets rebuilt when reopened, so check our widgets still belong to it
+        if (widgets[0] != null && isChildOf(widgets[0], parent))
+        {
+            return;
+        }
+
+        for (int i = 0; i < SLOTS; i++)
+        {
+            Widget w = parent.createChild(-1, WidgetType.GRAPHIC);
+
+            w.setOriginalX((i - SLOTS / 2) * SPACING);
+            w.setOriginalY(4);
+            w.setOriginalWidth(CacheViewerThumbnailStore.MAX_SIZE);
+            w.setOriginalHeight(CacheViewerThumbnailStore.MAX_SIZE);
+
+            w.setXPositionMode(WidgetPositionMode.ABSOLUTE_CENTER);
+            w.setYPositionMode(WidgetPositionMode.ABSOLUTE_BOTTOM);
+            w.setWidthMode(WidgetSizeMode.ABSOLUTE);
+            w.setHeightMode(WidgetSizeMode.ABSOLUTE);
+
+            w.setSpriteId(SPRITE_ID_BASE + i);
+            w.revalidate();
+
+            widgets[i] = w;
+        }
+
+        invalidate();
+    }
+
+    private static boolean isChildOf(Widget child, Widget parent)
+    {
+        Widget[] children = parent.getDynamicChildren();
+        if (children == null)
+        {
+            return false;
+        }
+
+        for (Widget c : children)
+        {
+            if (c == child)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.cacheviewer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Walks a list of ids on the client thread, a slice per tick.
+ * Pass it to ClientThread#invokeLater, returning false keeps it queued for the next tick.
+ */
+public abstract class CacheViewerTickTask implements BooleanSupplier
+{
+    private final int[] ids;
+    private final long budgetNanos;
+
+    private int cursor = 0;
+    private volatile boolean cancelled = false;
+
+    protected CacheViewerTickTask(int[] ids, long budgetNanos)
+    {
+        this.ids = ids;
+        this.budgetNanos = budgetNanos;
+    }
+
+    @Override
+    public boolean getAsBoolean()
+    {
+        if (cancelled)
+        {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + budgetNanos;
+
+        while (cursor < ids.length)
+        {
+            // Consumer can't take any more right now, retry the same id next tick
+            if (!process(ids[cursor]))
+            {
+                return false;
+            }
+
+            cursor++;
+
+            if (System.nanoTime() >= deadline)
+            {
+                return false;
+            }
+        }
+
+        return finish();
+    }
+
+    /**
+     * @return false to stop this tick and retry the same id on the next one
+     */
+    protected abstract boolean process(int id);
+
+    /**
+     * Called once every id has been processed, return false to be called again next tick.
+     */
+    protected boolean finish()
+    {
+        return true;
+    }
+
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    public int getProcessed()
+    {
+        return cursor;
+    }
+
+    public int getTotal()
+    {
+        return ids.length;
+    }
+}
@@ -0,0 +1,206 @@
+package com.cacheviewer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of everything the input handlers change and the client thread renders.
+ * Input handlers publish a new copy, the client thread reads one snapshot per update.
+ */
+public final class CacheViewerViewState
+{
+    private final String category;
+    private final Map<String, Integer> indices;
+
+    private final int rotX;
+    private final int rotZ;
+    private final int zoom;
+
+    private final boolean dragging;
+    private final boolean searchActive;
+    private final String search;
+
+    // Sorted ids from ::cachefind per category, the arrows step through these instead when set
+    private final Map<String, int[]> results;
+
+    private CacheViewerViewState(
+            String category,
+            Map<String, Integer> indices,
+            int rotX,
+            int rotZ,
+            int zoom,
+            boolean dragging,
+            boolean searchActive,
+            String search,
+            Map<String, int[]> results)
+    {
+        this.category = category;
+        this.indices = indices;
+        this.rotX = rotX;
+        this.rotZ = rotZ;
+        this.zoom = zoom;
+        this.dragging = dragging;
+        this.searchActive = searchActive;
+        this.search = search;
+        this.results = results;
+    }
+
+    public static CacheViewerViewState initial(String category, int zoom)
+    {
+        return new CacheViewerViewState(category, Collections.emptyMap(), 0, 0, zoom,
+                false, false, "", Collections.emptyMap());
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public int getIndex(String category)
+    {
+        return indices.getOrDefault(category, 0);
+    }
+
+    public int getCurrentIndex()
+    {
+        return getIndex(category);
+    }
+
+    public int getRotX()
+    {
+        return rotX;
+    }
+
+    public int getRotZ()
+    {
+        return rotZ;
+    }
+
+    public int getZoom()
+    {
+        return zoom;
+    }
+
+    public boolean isDragging()
+    {
+        return dragging;
+    }
+
+    public boolean isSearchActive()
+    {
+        return searchActive;
+    }
+
+    public String getSearch()
+    {
+        return search;
+    }
+
+    /**
+     * @return the sorted result ids for the current category, or null when not filtered.
+     * The array is shared between states and must not be modified.
+     */
+    public int[] getResults()
+    {
+        return results.get(category);
+    }
+
+    /**
+     * Steps from the current index to the next/previous result, or by one when not filtered.
+     * Stays put when there's no result in that direction.
+     */
+    public int stepIndex(int step)
+    {
+        int index = getCurrentIndex();
+        int[] ids = getResults();
+
+        if (ids == null || ids.length == 0)
+        {
+            return index + step;
+        }
+
+        int pos = Arrays.binarySearch(ids, index);
+        if (pos < 0)
+        {
+            // Not on a result, the insertion point is the next one up
+            pos = -pos - 1;
+            pos = step > 0 ? pos : pos - 1;
+        }
+        else
+        {
+            pos += step;
+        }
+
+        if (pos < 0 || pos >= ids.length)
+        {
+            return index;
+        }
+
+        return ids[pos];
+    }
+
+    public boolean isCategory(String category)
+    {
+        return this.category.equals(category);
+    }
+
+    /**
+     * Switches category, dropping any drag or search in progress.
+     */
+    public CacheViewerViewState withCategory(String category)
+    {
+        return new CacheViewerViewState(category, indices, rotX, rotZ, zoom, false, false, "", results);
+    }
+
+    /**
+     * Sets the index of the current category, clamped to 0.
+     */
+    public CacheViewerViewState withCurrentIndex(int index)
+    {
+        Map<String, Integer> copy = new HashMap<>(indices);
+        copy.put(category, Math.max(0, index));
+        return new CacheViewerViewState(category, Collections.unmodifiableMap(copy),
+                rotX, rotZ, zoom, dragging, searchActive, search, results);
+    }
+
+    /**
+     * Sets or clears (null) the results for a category. The ids are copied.
+     */
+    public CacheViewerViewState withResults(String category, int[] ids)
+    {
+        Map<String, int[]> copy = new HashMap<>(results);
+        if (ids == null)
+        {
+            copy.remove(category);
+        }
+        else
+        {
+            copy.put(category, ids.clone());
+        }
+
+        return new CacheViewerViewState(this.category, indices, rotX, rotZ, zoom, dragging, searchActive, search,
+                Collections.unmodifiableMap(copy));
+    }
+
+    public CacheViewerViewState withRotation(int rotX, int rotZ)
+    {
+        return new CacheViewerViewState(category, indices, rotX, rotZ, zoom, dragging, searchActive, search, results);
+    }
+
+    public CacheViewerViewState withZoom(int zoom)
+    {
+        return new CacheViewerViewState(category, indices, rotX, rotZ, zoom, dragging, searchActive, search, results);
+    }
+
+    public CacheViewerViewState withDragging(boolean dragging)
+    {
+        return new CacheViewerViewState(category, indices, rotX, rotZ, zoom, dragging, searchActive, search, results);
+    }
+
+    public CacheViewerViewState withSearch(boolean searchActive, String search)
+    {
+        return new CacheViewerViewState(category, indices, rotX, rotZ, zoom, dragging, searchActive, search, results);
+    }
+}
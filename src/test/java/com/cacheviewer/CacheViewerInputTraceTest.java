@@ -0,0 +1,140 @@
+package com.cacheviewer;
+
+import org.junit.Test;
+
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheViewerInputTraceTest
+{
+    private static final Component SOURCE = new Component() {};
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        CacheViewerInputTrace trace = new CacheViewerInputTrace();
+        trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, 1000, 0, KeyEvent.VK_RIGHT, KeyEvent.CHAR_UNDEFINED));
+        trace.mouseDragged(new MouseEvent(SOURCE, MouseEvent.MOUSE_DRAGGED, 1016, 0, -5, 300, 0, false));
+        trace.mouseWheelMoved(new MouseWheelEvent(SOURCE, MouseEvent.MOUSE_WHEEL, 1100, 0, 10, 20, 0, false,
+                MouseWheelEvent.WHEEL_UNIT_SCROLL, 3, -1));
+        trace.category("Items");
+        trace.search();
+        trace.showItem(4151);
+        trace.results("Models", new int[]{3, 70, 71, 5000});
+        trace.results("Models", null);
+
+        List<CacheViewerInputTrace.Event> events = CacheViewerInputTrace.read(new ByteArrayInputStream(trace.toByteArray()));
+        assertEquals(8, events.size());
+
+        CacheViewerInputTrace.Event key = events.get(0);
+        assertEquals(CacheViewerInputTrace.KEY_PRESSED, key.getType());
+        assertEquals(0, key.getTime());
+        assertEquals(KeyEvent.VK_RIGHT, key.getA());
+        assertEquals(KeyEvent.CHAR_UNDEFINED, (char) key.getB());
+
+        CacheViewerInputTrace.Event drag = events.get(1);
+        assertEquals(CacheViewerInputTrace.MOUSE_DRAGGED, drag.getType());
+        assertEquals(16, drag.getTime());
+        assertEquals(-5, drag.getA());
+        assertEquals(300, drag.getB());
+
+        CacheViewerInputTrace.Event wheel = events.get(2);
+        assertEquals(100, wheel.getTime());
+        assertEquals(-1, wheel.getC());
+
+        assertEquals("Items", events.get(3).getText());
+        assertEquals(CacheViewerInputTrace.SEARCH, events.get(4).getType());
+        assertEquals(4151, events.get(5).getA());
+
+        CacheViewerInputTrace.Event results = events.get(6);
+        assertEquals("Models", results.getText());
+        assertArrayEquals(new int[]{3, 70, 71, 5000}, results.getIds());
+
+        assertEquals(CacheViewerInputTrace.RESULTS, events.get(7).getType());
+        assertNull(events.get(7).getIds());
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+        CacheViewerInputTrace trace = new CacheViewerInputTrace();
+        long when = 0;
+
+        for (int i = 0; i < 20; i++)
+        {
+            trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when += 50, 0, KeyEvent.VK_RIGHT, KeyEvent.CHAR_UNDEFINED));
+        }
+
+        trace.category("Models");
+        trace.mousePressed(new MouseEvent(SOURCE, MouseEvent.MOUSE_PRESSED, when += 50, 0, 100, 100, 1, false));
+        for (int i = 0; i < 30; i++)
+        {
+            trace.mouseDragged(new MouseEvent(SOURCE, MouseEvent.MOUSE_DRAGGED, when += 16, 0, 100 + i, 100 - i, 0, false));
+        }
+        trace.mouseReleased(new MouseEvent(SOURCE, MouseEvent.MOUSE_RELEASED, when += 16, 0, 130, 70, 1, false));
+        trace.mouseWheelMoved(new MouseWheelEvent(SOURCE, MouseEvent.MOUSE_WHEEL, when += 50, 0, 100, 100, 0, false,
+                MouseWheelEvent.WHEEL_UNIT_SCROLL, 3, 1));
+
+        // A ::cachefind style jump, then stepping through the results
+        trace.results("Sprites", new int[]{5, 9, 40});
+        trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when += 50, 0, KeyEvent.VK_RIGHT, KeyEvent.CHAR_UNDEFINED));
+
+        // Typing an id into the search box only works if the click on it was replayed
+        trace.category("Items");
+        trace.search();
+        for (char c : "123".toCharArray())
+        {
+            trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when += 50, 0, KeyEvent.VK_1 + c - '1', c));
+        }
+        trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when += 50, 0, KeyEvent.VK_ENTER, '\n'));
+
+        trace.category("Icons");
+        trace.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when + 50, 0, KeyEvent.VK_RIGHT, KeyEvent.CHAR_UNDEFINED));
+
+        List<CacheViewerInputTrace.Event> events = CacheViewerInputTrace.read(new ByteArrayInputStream(trace.toByteArray()));
+        CacheViewerReplayHarness.Report report = new CacheViewerReplayHarness().replay(events);
+
+        assertEquals(events.size(), report.getEvents().size());
+        assertEquals(0, report.getPendingInvokes());
+
+        // Every arrow key and drag should queue an update that changes the viewport
+        for (int i = 0; i < events.size(); i++)
+        {
+            CacheViewerInputTrace.Event event = events.get(i);
+            CacheViewerReplayHarness.EventStats stats = report.getEvents().get(i);
+
+            if (event.getType() == CacheViewerInputTrace.KEY_PRESSED && event.getA() == KeyEvent.VK_RIGHT
+                    || event.getType() == CacheViewerInputTrace.MOUSE_DRAGGED)
+            {
+                assertTrue(stats.getQueueDepth() > 0);
+                assertTrue(stats.getFirstRenderNanos() >= 0);
+            }
+        }
+
+        // Every event has to have landed, in order, for the replay to end up here
+        CacheViewerViewState state = report.getFinalState();
+        assertEquals("Icons", state.getCategory());
+        assertEquals(1, state.getCurrentIndex());
+        assertEquals(9, state.getIndex("Sprites"));
+        assertEquals(0, state.getIndex("Models"));
+        assertEquals(123, state.getIndex("Items"));
+
+        // The first drag starts at the press, the other 29 move 1 right and 1 up, 4 units of rotation per pixel
+        assertEquals(2048 - 29 * 4, state.getRotX());
+        assertEquals(2048 - 29 * 4, state.getRotZ());
+        assertEquals(550, state.getZoom());
+        assertFalse(state.isDragging());
+        assertFalse(state.isSearchActive());
+    }
+}
@@ -0,0 +1,603 @@
+package com.cacheviewer;
+
+import com.google.inject.Guice;
+import net.runelite.api.Client;
+import net.runelite.api.events.CommandExecuted;
+import net.runelite.api.widgets.Widget;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.eventbus.EventBus;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Replays a recorded input trace against the plugin with a stub client and client thread.
+ * Every event is followed by client ticks until the invoke queue is empty, and we report how
+ * long until the first widget change, how deep the invoke queue got and how many widgets were created.
+ *
+ * Run with a trace file to compare input path changes on the same workload.
+ */
+public class CacheViewerReplayHarness
+{
+    private static final int MAX_TICKS_PER_EVENT = 50;
+    private static final int ITEM_COUNT = 30000;
+
+    private static final Component SOURCE = new Component() {};
+
+    public static final class EventStats
+    {
+        private final int type;
+        private final long firstRenderNanos;
+        private final int queueDepth;
+        private final int widgetsCreated;
+
+        EventStats(int type, long firstRenderNanos, int queueDepth, int widgetsCreated)
+        {
+            this.type = type;
+            this.firstRenderNanos = firstRenderNanos;
+            this.queueDepth = queueDepth;
+            this.widgetsCreated = widgetsCreated;
+        }
+
+        public int getType()
+        {
+            return type;
+        }
+
+        /**
+         * Nanoseconds from dispatching the event to the first widget change, -1 if nothing changed.
+         */
+        public long getFirstRenderNanos()
+        {
+            return firstRenderNanos;
+        }
+
+        /**
+         * Invokes queued on the client thread once the handler returned.
+         */
+        public int getQueueDepth()
+        {
+            return queueDepth;
+        }
+
+        public int getWidgetsCreated()
+        {
+            return widgetsCreated;
+        }
+    }
+
+    public static final class Report
+    {
+        private final List<EventStats> events = new ArrayList<>();
+        private int pendingInvokes;
+        private CacheViewerViewState finalState;
+
+        public List<EventStats> getEvents()
+        {
+            return events;
+        }
+
+        /**
+         * View state after the last event was handled.
+         */
+        public CacheViewerViewState getFinalState()
+        {
+            return finalState;
+        }
+
+        /**
+         * Invokes still queued after the last event, should be 0.
+         */
+        public int getPendingInvokes()
+        {
+            return pendingInvokes;
+        }
+
+        @Override
+        public String toString()
+        {
+            long[] renders = events.stream()
+                    .mapToLong(EventStats::getFirstRenderNanos)
+                    .filter(n -> n >= 0)
+                    .sorted()
+                    .toArray();
+
+            int maxDepth = events.stream().mapToInt(EventStats::getQueueDepth).max().orElse(0);
+            double meanDepth = events.stream().mapToInt(EventStats::getQueueDepth).average().orElse(0);
+            int widgets = events.stream().mapToInt(EventStats::getWidgetsCreated).sum();
+
+            return String.format("events=%d rendered=%d firstRender p50=%dus p95=%dus max=%dus"
+                            + " queueDepth mean=%.2f max=%d widgets=%d (%.2f/event) pending=%d",
+                    events.size(), renders.length,
+                    percentile(renders, 50) / 1000, percentile(renders, 95) / 1000, percentile(renders, 100) / 1000,
+                    meanDepth, maxDepth, widgets, events.isEmpty() ? 0 : (double) widgets / events.size(),
+                    pendingInvokes);
+        }
+
+        private static long percentile(long[] sorted, int p)
+        {
+            if (sorted.length == 0)
+            {
+                return 0;
+            }
+
+            int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+        }
+    }
+
+    /**
+     * Runs invokes in order when ticked, returning false re-queues for the next tick like the real one.
+     */
+    static final class StubClientThread extends ClientThread
+    {
+        private final ArrayDeque<BooleanSupplier> queue = new ArrayDeque<>();
+        private boolean ticking = false;
+
+        @Override
+        public void invoke(Runnable r)
+        {
+            invoke(() ->
+            {
+                r.run();
+                return true;
+            });
+        }
+
+        @Override
+        public void invoke(BooleanSupplier r)
+        {
+            if (ticking && r.getAsBoolean())
+            {
+                return;
+            }
+
+            queue.add(r);
+        }
+
+        @Override
+        public void invokeLater(Runnable r)
+        {
+            invokeLater(() ->
+            {
+                r.run();
+                return true;
+            });
+        }
+
+        @Override
+        public void invokeLater(BooleanSupplier r)
+        {
+            queue.add(r);
+        }
+
+        int depth()
+        {
+            return queue.size();
+        }
+
+        void tick()
+        {
+            ticking = true;
+            try
+            {
+                int n = queue.size();
+                for (int i = 0; i < n; i++)
+                {
+                    BooleanSupplier r = queue.poll();
+                    if (!r.getAsBoolean())
+                    {
+                        queue.add(r);
+                    }
+                }
+            }
+            finally
+            {
+                ticking = false;
+            }
+        }
+    }
+
+    private final StubClientThread clientThread = new StubClientThread();
+    private final Map<Integer, Widget> widgets = new HashMap<>();
+    private final Map<Integer, Object> spriteOverrides = new HashMap<>();
+    private final Client client;
+    private final CacheViewerPlugin plugin = new CacheViewerPlugin();
+
+    private boolean measuring = false;
+    private long firstRenderNanos = -1;
+    private int widgetsCreated = 0;
+    private int nextWidgetId = 1 << 20;
+
+    public CacheViewerReplayHarness()
+    {
+        client = stub(Client.class, this::invokeClient);
+
+        CacheViewerConfig config = stub(CacheViewerConfig.class, (proxy, method, args) ->
+                "thumbnailCacheSize".equals(method.getName()) ? 1 : defaultValue(method.getReturnType()));
+
+        Guice.createInjector(binder ->
+        {
+            binder.bind(Client.class).toInstance(client);
+            binder.bind(ClientThread.class).toInstance(clientThread);
+            binder.bind(CacheViewerConfig.class).toInstance(config);
+            binder.bind(EventBus.class).toInstance(new EventBus());
+        }).injectMembers(plugin);
+    }
+
+    public Report replay(List<CacheViewerInputTrace.Event> events)
+    {
+        Report report = new Report();
+
+        plugin.startUp();
+        try
+        {
+            plugin.onCommandExecuted(new CommandExecuted("cache", new String[0]));
+            drain();
+
+            for (CacheViewerInputTrace.Event event : events)
+            {
+                int createdBefore = widgetsCreated;
+                firstRenderNanos = -1;
+                measuring = true;
+
+                long start = System.nanoTime();
+                dispatch(event);
+                int depth = clientThread.depth();
+                drain();
+
+                measuring = false;
+                report.events.add(new EventStats(event.getType(),
+                        firstRenderNanos >= 0 ? firstRenderNanos - start : -1,
+                        depth,
+                        widgetsCreated - createdBefore));
+            }
+
+            report.pendingInvokes = clientThread.depth();
+            report.finalState = plugin.getViewState();
+        }
+        finally
+        {
+            plugin.shutDown();
+            clientThread.tick();
+        }
+
+        return report;
+    }
+
+    private void drain()
+    {
+        for (int i = 0; i < MAX_TICKS_PER_EVENT && clientThread.depth() > 0; i++)
+        {
+            clientThread.tick();
+        }
+
+        // The plugin only listens to ticks while the viewer is open
+        if (plugin.isActive())
+        {
+            plugin.onClientTick(null);
+        }
+    }
+
+    private void dispatch(CacheViewerInputTrace.Event e)
+    {
+        long when = e.getTime();
+
+        switch (e.getType())
+        {
+            case CacheViewerInputTrace.KEY_PRESSED:
+                plugin.keyPressed(new KeyEvent(SOURCE, KeyEvent.KEY_PRESSED, when, e.getC(), e.getA(), (char) e.getB()));
+                break;
+            case CacheViewerInputTrace.KEY_TYPED:
+                if ((char) e.getB() != KeyEvent.CHAR_UNDEFINED)
+                {
+                    plugin.keyTyped(new KeyEvent(SOURCE, KeyEvent.KEY_TYPED, when, e.getC(), KeyEvent.VK_UNDEFINED, (char) e.getB()));
+                }
+                break;
+            case CacheViewerInputTrace.MOUSE_PRESSED:
+                plugin.mousePressed(new MouseEvent(SOURCE, MouseEvent.MOUSE_PRESSED, when, e.getC(), e.getA(), e.getB(), 1, false));
+                break;
+            case CacheViewerInputTrace.MOUSE_RELEASED:
+                plugin.mouseReleased(new MouseEvent(SOURCE, MouseEvent.MOUSE_RELEASED, when, e.getC(), e.getA(), e.getB(), 1, false));
+                break;
+            case CacheViewerInputTrace.MOUSE_DRAGGED:
+                plugin.mouseDragged(new MouseEvent(SOURCE, MouseEvent.MOUSE_DRAGGED, when, e.getC(), e.getA(), e.getB(), 0, false));
+                break;
+            case CacheViewerInputTrace.MOUSE_WHEEL:
+                plugin.mouseWheelMoved(new MouseWheelEvent(SOURCE, MouseEvent.MOUSE_WHEEL, when, 0, e.getA(), e.getB(),
+                        0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, 3, e.getC()));
+                break;
+            case CacheViewerInputTrace.CATEGORY:
+                plugin.switchCategory(e.getText());
+                break;
+            case CacheViewerInputTrace.SEARCH:
+                plugin.activateSearch();
+                break;
+            case CacheViewerInputTrace.SHOW_ITEM:
+                plugin.showItem(e.getA());
+                break;
+            case CacheViewerInputTrace.RESULTS:
+                if (e.getIds() == null)
+                {
+                    plugin.clearResults(e.getText());
+                }
+                else
+                {
+                    plugin.browseResults(e.getText(), e.getIds());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + e.getType());
+        }
+    }
+
+
+
+    private void onWidgetChanged()
+    {
+        if (measuring && firstRenderNanos < 0)
+        {
+            firstRenderNanos = System.nanoTime();
+        }
+    }
+
+    private Object invokeClient(Object proxy, Method method, Object[] args)
+    {
+        switch (method.getName())
+        {
+            case "getWidget":
+                return args.length == 2
+                        ? getWidget((Integer) args[0] << 16 | (Integer) args[1])
+                        : getWidget((Integer) args[0]);
+            case "getSpriteOverrides":
+                return spriteOverrides;
+            case "createSpritePixels":
+                return spritePixels((int[]) args[0], (Integer) args[1], (Integer) args[2]);
+            case "createItemSprite":
+                return spritePixels(new int[36 * 32], 36, 32);
+            case "getSprites":
+                return spriteArray(method.getReturnType());
+            case "getFileIds":
+                return ids(ITEM_COUNT);
+            case "getItemDefinition":
+            case "getNpcDefinition":
+                return definition(method.getReturnType(), (Integer) args[0]);
+            case "getIndexConfig":
+            case "getIndexSprites":
+            case "getWidgetSpriteCache":
+            case "openInterface":
+                return stub(method.getReturnType(), this::invokeClient);
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private Widget getWidget(int id)
+    {
+        Widget w = widgets.get(id);
+        if (w != null)
+        {
+            return w;
+        }
+
+        // The viewport template needs a parent to put npc models and thumbnails in
+        Widget parent = (id & 0xFFFF) == 4 ? newWidget(null, nextWidgetId++) : null;
+        w = newWidget(parent, id);
+
+        // Starts closed so ::cache opens it
+        if ((id & 0xFFFF) == 0)
+        {
+            w.setHidden(true);
+        }
+
+        widgets.put(id, w);
+        return w;
+    }
+
+    private Widget newWidget(Widget parent, int id)
+    {
+        Map<String, Object> props = new HashMap<>();
+        List<Widget> children = new ArrayList<>();
+        Widget[] self = new Widget[1];
+
+        self[0] = stub(Widget.class, (proxy, method, args) ->
+        {
+            String name = method.getName();
+            int argc = args == null ? 0 : args.length;
+
+            switch (name)
+            {
+                case "createChild":
+                    Widget child = newWidget(self[0], nextWidgetId++);
+                    children.add(child);
+                    widgetsCreated++;
+                    return child;
+                case "getDynamicChildren":
+                    return children.toArray(new Widget[0]);
+                case "getChildren":
+                case "getStaticChildren":
+                case "getNestedChildren":
+                    return new Widget[0];
+                case "deleteAllChildren":
+                    children.clear();
+                    onWidgetChanged();
+                    return null;
+                case "getParent":
+                    return parent;
+                case "getId":
+                    return id;
+                case "getBounds":
+                    return new Rectangle(0, 0, 512, 334);
+                case "revalidate":
+                case "revalidateScroll":
+                    onWidgetChanged();
+                    return null;
+                default:
+                    break;
+            }
+
+            if (name.startsWith("set") && argc > 0)
+            {
+                props.put(name.substring(3) + (argc > 1 ? args[0] : ""), args[argc - 1]);
+                onWidgetChanged();
+                return Widget.class.isAssignableFrom(method.getReturnType()) ? proxy : null;
+            }
+
+            String prop = name.startsWith("get") ? name.substring(3)
+                    : name.startsWith("is") ? name.substring(2)
+                    : null;
+            if (prop != null && argc == 0 && props.containsKey(prop))
+            {
+                return props.get(prop);
+            }
+
+            return defaultValue(method.getReturnType());
+        });
+
+        return self[0];
+    }
+
+    private Object spritePixels(int[] pixels, int width, int height)
+    {
+        return stub(net.runelite.api.SpritePixels.class, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "getPixels":
+                    return pixels;
+                case "getWidth":
+                case "getMaxWidth":
+                    return width;
+                case "getHeight":
+                case "getMaxHeight":
+                    return height;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private Object spriteArray(Class<?> type)
+    {
+        Object[] array = (Object[]) java.lang.reflect.Array.newInstance(type.getComponentType(), 1);
+        array[0] = spritePixels(new int[32 * 32], 32, 32);
+        return array;
+    }
+
+    private Object definition(Class<?> type, int id)
+    {
+        return stub(type, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "getId":
+                    return id;
+                case "getName":
+                    return "Definition " + id;
+                case "getModels":
+                    return new int[]{id, id + 1};
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static int[] ids(int count)
+    {
+        int[] ids = new int[count];
+        Arrays.setAll(ids, i -> i);
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(CacheViewerReplayHarness.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) ->
+                {
+                    switch (method.getName())
+                    {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                        default:
+                            return handler.invoke(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if (!type.isPrimitive() || type == void.class)
+        {
+            return null;
+        }
+        if (type == boolean.class)
+        {
+            return false;
+        }
+        if (type == char.class)
+        {
+            return (char) 0;
+        }
+        if (type == long.class)
+        {
+            return 0L;
+        }
+        if (type == float.class)
+        {
+            return 0f;
+        }
+        if (type == double.class)
+        {
+            return 0d;
+        }
+        if (type == byte.class)
+        {
+            return (byte) 0;
+        }
+        if (type == short.class)
+        {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: CacheViewerReplayHarness <trace.cvt>...");
+            return;
+        }
+
+        for (String path : args)
+        {
+            List<CacheViewerInputTrace.Event> events;
+            try (InputStream in = new FileInputStream(path))
+            {
+                events = CacheViewerInputTrace.read(in);
+            }
+
+            System.out.println(path + ": " + new CacheViewerReplayHarness().replay(events));
+        }
+    }
+}